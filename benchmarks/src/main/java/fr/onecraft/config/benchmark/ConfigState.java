@@ -0,0 +1,46 @@
+package fr.onecraft.config.benchmark;
+
+import fr.onecraft.config.FileConfiguration;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Generated document, written to a file and loaded once per trial
+ */
+@State(Scope.Benchmark)
+public class ConfigState {
+
+    @Param({"10", "1000", "100000"})
+    public int keys;
+
+    @Param({"1", "5", "10"})
+    public int depth;
+
+    public Documents document;
+    public String yaml;
+    public File file;
+    public FileConfiguration config;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        document = Documents.generate(keys, depth);
+        yaml = document.yaml();
+
+        file = File.createTempFile("benchmark", ".yml");
+        Files.write(file.toPath(), yaml.getBytes(StandardCharsets.UTF_8));
+
+        config = new FileConfiguration();
+        config.load(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file.toPath());
+        Files.deleteIfExists(new File(file.getPath() + ".cache").toPath());
+    }
+
+}
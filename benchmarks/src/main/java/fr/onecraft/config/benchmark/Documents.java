@@ -0,0 +1,90 @@
+package fr.onecraft.config.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generated YAML documents of a given size and depth
+ */
+public final class Documents {
+
+    private final int keys;
+    private final int depth;
+    private final int branches;
+
+    private final StringBuilder builder = new StringBuilder();
+    private final List<String> paths = new ArrayList<>();
+    private int count = 0;
+
+    private Documents(int keys, int depth) {
+        this.keys = keys;
+        this.depth = depth;
+        this.branches = Math.max(2, (int) Math.ceil(Math.pow(keys, 1.0 / depth)));
+    }
+
+    /**
+     * Generate a document
+     *
+     * @param keys  Number of values
+     * @param depth Nesting level of values, 1 for a flat document
+     * @return generated document
+     */
+    public static Documents generate(int keys, int depth) {
+        Documents documents = new Documents(keys, depth);
+        documents.section(1, "", "");
+        return documents;
+    }
+
+    public String yaml() {
+        return builder.toString();
+    }
+
+    /**
+     * Full path of every value, in document order
+     */
+    public List<String> paths() {
+        return paths;
+    }
+
+    private void section(int level, String indent, String prefix) {
+        int children = level == 1 && depth == 1 ? keys : branches;
+
+        for (int i = 0; i < children && count < keys; i++) {
+            if (level < depth) {
+                String key = "section-" + level + "-" + i;
+                builder.append(indent).append(key).append(":\n");
+                section(level + 1, indent + "  ", prefix + key + ".");
+            } else {
+                String key = "key-" + count;
+                builder.append(indent).append(key).append(": ");
+                value(indent);
+                builder.append('\n');
+                paths.add(prefix + key);
+                count++;
+            }
+        }
+    }
+
+    private void value(String indent) {
+        switch (count % 5) {
+            case 0:
+                builder.append(count);
+                break;
+            case 1:
+                builder.append("value ").append(count);
+                break;
+            case 2:
+                builder.append(count % 2 == 0);
+                break;
+            case 3:
+                builder.append(count + 0.5);
+                break;
+            default:
+                builder.append('\n')
+                        .append(indent).append("- ").append(count).append('\n')
+                        .append(indent).append("- ").append(count + 1);
+                break;
+        }
+    }
+
+}
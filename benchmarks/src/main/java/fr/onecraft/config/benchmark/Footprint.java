@@ -0,0 +1,57 @@
+package fr.onecraft.config.benchmark;
+
+import fr.onecraft.config.FileConfiguration;
+import fr.onecraft.config.FrozenConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Retained heap of loaded trees compared to frozen copies
+ * <p>
+ * Not a JMH benchmark, run with {@code java -cp target/benchmarks.jar fr.onecraft.config.benchmark.Footprint}
+ */
+public final class Footprint {
+
+    private static final int[][] DOCUMENTS = {{10, 1}, {1000, 1}, {1000, 5}, {100000, 1}, {100000, 5}, {100000, 10}};
+
+    // Copies held at once, so the measure isn't lost in the noise of the heap
+    private static final long BYTES = 64 * 1024 * 1024;
+
+    private Footprint() {}
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%8s %6s %16s %16s%n", "keys", "depth", "tree (B)", "frozen (B)");
+        for (int[] document : DOCUMENTS) {
+            String yaml = Documents.generate(document[0], document[1]).yaml();
+            int copies = (int) Math.max(1, BYTES / (yaml.length() * 8L));
+
+            long empty = usedHeap();
+            List<FileConfiguration> configs = new ArrayList<>();
+            for (int i = 0; i < copies; i++) {
+                FileConfiguration config = new FileConfiguration();
+                config.loadFromString(yaml);
+                configs.add(config);
+            }
+            long tree = usedHeap() - empty;
+
+            // Values are shared with the tree, which is released before measuring
+            List<FrozenConfiguration> frozen = new ArrayList<>();
+            for (FileConfiguration config : configs) {
+                frozen.add(config.freeze());
+            }
+            configs.clear();
+            long copy = usedHeap() - empty;
+
+            System.out.printf("%8d %6d %16d %16d%n", document[0], document[1], tree / copies, copy / copies);
+            frozen.clear();
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
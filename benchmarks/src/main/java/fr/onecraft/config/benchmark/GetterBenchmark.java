@@ -0,0 +1,108 @@
+package fr.onecraft.config.benchmark;
+
+import fr.onecraft.config.ConfigKey;
+import fr.onecraft.config.FileConfiguration;
+import fr.onecraft.config.FrozenConfiguration;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Typed getters by path compared to compiled keys and frozen copies
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetterBenchmark {
+
+    private static final int SAMPLES = 256;
+
+    @State(Scope.Thread)
+    public static class GetterState {
+
+        public FileConfiguration config;
+        public FrozenConfiguration frozen;
+        public String[] intPaths;
+        public String[] stringPaths;
+        public String[] booleanPaths;
+        public ConfigKey<Integer>[] intKeys;
+        public ConfigKey<String>[] stringKeys;
+        public int index = 0;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unchecked")
+        public void setup(ConfigState state) {
+            config = state.config;
+            frozen = config.freeze();
+            List<String> paths = state.document.paths();
+            Random random = new Random(0);
+
+            intPaths = new String[SAMPLES];
+            stringPaths = new String[SAMPLES];
+            booleanPaths = new String[SAMPLES];
+            intKeys = new ConfigKey[SAMPLES];
+            stringKeys = new ConfigKey[SAMPLES];
+
+            // Values are generated in a cycle of int, string, boolean, double and list
+            int cycles = Math.max(1, paths.size() / 5);
+            for (int i = 0; i < SAMPLES; i++) {
+                int base = random.nextInt(cycles) * 5;
+                intPaths[i] = paths.get(base);
+                stringPaths[i] = paths.get(Math.min(base + 1, paths.size() - 1));
+                booleanPaths[i] = paths.get(Math.min(base + 2, paths.size() - 1));
+                intKeys[i] = config.key(intPaths[i], 0);
+                stringKeys[i] = config.key(stringPaths[i], "");
+            }
+        }
+
+        int next() {
+            return index = (index + 1) & (SAMPLES - 1);
+        }
+
+    }
+
+    @Benchmark
+    public int getInt(GetterState state) {
+        return state.config.getInt(state.intPaths[state.next()]);
+    }
+
+    @Benchmark
+    public int getIntKey(GetterState state) {
+        return state.intKeys[state.next()].get();
+    }
+
+    @Benchmark
+    public int getIntFrozen(GetterState state) {
+        return state.frozen.getInt(state.intPaths[state.next()]);
+    }
+
+    @Benchmark
+    public String getString(GetterState state) {
+        return state.config.getString(state.stringPaths[state.next()]);
+    }
+
+    @Benchmark
+    public String getStringKey(GetterState state) {
+        return state.stringKeys[state.next()].get();
+    }
+
+    @Benchmark
+    public String getStringFrozen(GetterState state) {
+        return state.frozen.getString(state.stringPaths[state.next()]);
+    }
+
+    @Benchmark
+    public boolean getBoolean(GetterState state) {
+        return state.config.getBoolean(state.booleanPaths[state.next()]);
+    }
+
+    @Benchmark
+    public boolean getBooleanFrozen(GetterState state) {
+        return state.frozen.getBoolean(state.booleanPaths[state.next()]);
+    }
+
+}
@@ -0,0 +1,64 @@
+package fr.onecraft.config.benchmark;
+
+import fr.onecraft.config.FileConfiguration;
+import fr.onecraft.config.FrozenConfiguration;
+import fr.onecraft.config.SimpleYamlParser;
+import fr.onecraft.config.exception.ConfigurationException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+
+    private static final SimpleYamlParser PARSER = new SimpleYamlParser();
+
+    @Benchmark
+    public FileConfiguration loadFile(ConfigState state) throws ConfigurationException {
+        FileConfiguration config = new FileConfiguration();
+        config.load(state.file);
+        return config;
+    }
+
+    @Benchmark
+    public FileConfiguration loadFromString(ConfigState state) throws ConfigurationException {
+        FileConfiguration config = new FileConfiguration();
+        config.loadFromString(state.yaml);
+        return config;
+    }
+
+    @Benchmark
+    public FileConfiguration loadSimpleParser(ConfigState state) throws ConfigurationException {
+        FileConfiguration config = new FileConfiguration();
+        config.setParser(PARSER);
+        config.load(state.file);
+        return config;
+    }
+
+    @Benchmark
+    public FileConfiguration loadBinaryCache(ConfigState state) throws ConfigurationException {
+        // Cache is written by the first call, then read by the following ones
+        FileConfiguration config = new FileConfiguration();
+        config.options().binaryCache(true);
+        config.load(state.file);
+        return config;
+    }
+
+    @Benchmark
+    public Object loadLazyAndReadOne(ConfigState state) throws ConfigurationException {
+        FileConfiguration config = new FileConfiguration();
+        config.options().lazy(true);
+        config.load(state.file);
+        return config.get(state.document.paths().get(0));
+    }
+
+    @Benchmark
+    public FrozenConfiguration freeze(ConfigState state) {
+        return state.config.freeze();
+    }
+
+}
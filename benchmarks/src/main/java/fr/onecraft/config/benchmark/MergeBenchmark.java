@@ -0,0 +1,100 @@
+package fr.onecraft.config.benchmark;
+
+import fr.onecraft.config.FileConfiguration;
+import net.md_5.bungee.config.Configuration;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merge of defaults into a user configuration, as done on save
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MergeBenchmark {
+
+    @State(Scope.Thread)
+    public static class MergeState {
+
+        public MergeConfiguration defaults;
+        public MergeConfiguration merged;
+        public MergeConfiguration partial;
+        public MergeConfiguration reversed;
+
+        private String partialYaml;
+        private String reversedYaml;
+
+        @Setup(Level.Trial)
+        public void setup(ConfigState state) throws Exception {
+            defaults = new MergeConfiguration();
+            defaults.loadFromString(state.yaml);
+
+            merged = new MergeConfiguration();
+            merged.loadFromString(state.yaml, defaults);
+
+            // One value out of ten is missing
+            partial = new MergeConfiguration();
+            partial.loadFromString(state.yaml, defaults);
+            List<String> paths = state.document.paths();
+            for (int i = 0; i < paths.size(); i += 10) {
+                partial.set(paths.get(i), null);
+            }
+            partialYaml = partial.saveToString();
+
+            // Same values, but in reverse order
+            reversed = new MergeConfiguration();
+            for (int i = paths.size() - 1; i >= 0; i--) {
+                reversed.set(paths.get(i), merged.get(paths.get(i)));
+            }
+            reversedYaml = reversed.saveToString();
+        }
+
+        @Setup(Level.Invocation)
+        public void reset() throws Exception {
+            partial.loadFromString(partialYaml, defaults);
+            reversed.loadFromString(reversedYaml, defaults);
+        }
+
+    }
+
+    /**
+     * Already merged, the common case on repeated saves
+     */
+    @Benchmark
+    public Configuration copyDefaultsUnchanged(MergeState state) {
+        return state.merged.merge(state.defaults);
+    }
+
+    /**
+     * Missing values are copied from defaults
+     */
+    @Benchmark
+    public Configuration copyDefaultsMissing(MergeState state) {
+        return state.partial.merge(state.defaults);
+    }
+
+    /**
+     * Every section needs its keys reordered
+     */
+    @Benchmark
+    public Configuration reorderKeys(MergeState state) {
+        return state.reversed.merge(state.defaults);
+    }
+
+    /**
+     * Expose defaults merge
+     */
+    public static class MergeConfiguration extends FileConfiguration {
+
+        public Configuration merge(FileConfiguration defaults) {
+            copyDefaults(getConfig(), defaults.getConfig());
+            return getConfig();
+        }
+
+    }
+
+}
@@ -0,0 +1,68 @@
+package fr.onecraft.config.benchmark;
+
+import fr.onecraft.config.FileConfiguration;
+import fr.onecraft.config.exception.ConfigurationException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SaveBenchmark {
+
+    @State(Scope.Thread)
+    public static class DefaultsState {
+
+        public FileConfiguration config;
+
+        @Setup(Level.Trial)
+        public void setup(ConfigState state) throws ConfigurationException {
+            FileConfiguration defaults = new FileConfiguration();
+            defaults.loadFromString(state.yaml);
+
+            config = new FileConfiguration();
+            config.loadFromString(state.yaml, defaults);
+            config.options().copyDefaults(true);
+        }
+
+    }
+
+    @Benchmark
+    public void saveWriter(ConfigState state) throws ConfigurationException {
+        state.config.save(NullWriter.INSTANCE);
+    }
+
+    /**
+     * Repeated saves with defaults, merged only on the first one
+     */
+    @Benchmark
+    public void saveWriterWithDefaults(DefaultsState state) throws ConfigurationException {
+        state.config.save(NullWriter.INSTANCE);
+    }
+
+    /**
+     * Writer discarding everything, so only serialization is measured
+     */
+    static final class NullWriter extends Writer {
+
+        static final NullWriter INSTANCE = new NullWriter();
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {}
+
+        @Override
+        public void write(String str, int off, int len) {}
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+
+    }
+
+}
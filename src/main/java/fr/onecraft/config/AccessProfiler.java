@@ -0,0 +1,165 @@
+package fr.onecraft.config;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sampling profiler of the paths read through a {@link FileConfiguration}
+ * <p>
+ * Records how often each path is read, how often the read falls back to
+ * the default value because the value is missing or of another type, and
+ * which threads read it. Counts are estimated from samples.
+ */
+public class AccessProfiler {
+
+    private static final int MAX_THREADS = 16;
+
+    private final int sampleRate;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Profiler recording every read
+     */
+    public AccessProfiler() {
+        this(1);
+    }
+
+    /**
+     * @param sampleRate One read out of sampleRate is recorded, on average
+     */
+    public AccessProfiler(int sampleRate) {
+        if (sampleRate < 1) throw new IllegalArgumentException("sampleRate must be positive");
+        this.sampleRate = sampleRate;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Whether the current read must be recorded
+     */
+    boolean sample() {
+        return sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+    }
+
+    /**
+     * Record a sampled read
+     *
+     * @param path     Path read
+     * @param fallback Whether the default value is returned
+     */
+    void record(String path, boolean fallback) {
+        Counter counter = counters.get(path);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(path, key -> new Counter());
+        }
+
+        counter.reads.increment();
+        if (fallback) counter.fallbacks.increment();
+        if (counter.threads.size() < MAX_THREADS) {
+            counter.threads.add(Thread.currentThread().getName());
+        }
+    }
+
+    /**
+     * Most read paths
+     *
+     * @param limit Maximum number of paths
+     * @return paths sorted by estimated reads, most read first
+     */
+    public List<PathStats> top(int limit) {
+        List<PathStats> stats = new ArrayList<>(counters.size());
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            Counter counter = entry.getValue();
+            stats.add(new PathStats(
+                    entry.getKey(),
+                    counter.reads.sum() * sampleRate,
+                    counter.fallbacks.sum() * sampleRate,
+                    new ArrayList<>(counter.threads)
+            ));
+        }
+
+        stats.sort((a, b) -> Long.compare(b.reads, a.reads));
+        return stats.size() > limit ? new ArrayList<>(stats.subList(0, limit)) : stats;
+    }
+
+    /**
+     * Text report of the most read paths
+     *
+     * @param limit Maximum number of paths
+     */
+    public String report(int limit) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Top %d paths, 1 read out of %d sampled%n", limit, sampleRate));
+        builder.append(String.format("%12s %9s  %s%n", "reads", "fallback", "path [threads]"));
+        for (PathStats stats : top(limit)) {
+            builder.append(String.format("%12d %8.1f%%  %s %s%n",
+                    stats.reads, stats.getFallbackRate() * 100, stats.path, stats.threads));
+        }
+        return builder.toString();
+    }
+
+    public void reset() {
+        counters.clear();
+    }
+
+    private static final class Counter {
+
+        private final LongAdder reads = new LongAdder();
+        private final LongAdder fallbacks = new LongAdder();
+        private final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    }
+
+    /**
+     * Reads of a path
+     */
+    public static class PathStats {
+
+        private final String path;
+        private final long reads;
+        private final long fallbacks;
+        private final List<String> threads;
+
+        private PathStats(String path, long reads, long fallbacks, List<String> threads) {
+            this.path = path;
+            this.reads = reads;
+            this.fallbacks = fallbacks;
+            this.threads = threads;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Estimated number of reads
+         */
+        public long getReads() {
+            return reads;
+        }
+
+        /**
+         * Estimated number of reads which returned the default value
+         */
+        public long getFallbacks() {
+            return fallbacks;
+        }
+
+        public double getFallbackRate() {
+            return reads == 0 ? 0 : (double) fallbacks / reads;
+        }
+
+        /**
+         * Names of the threads reading the path, at most 16
+         */
+        public List<String> getThreads() {
+            return threads;
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+package fr.onecraft.config;
+
+import net.md_5.bungee.config.Configuration;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Primitive arrays built from lists of a given tree
+ */
+final class ArrayCache {
+
+    private final Configuration tree;
+    private final int version;
+
+    private final ConcurrentHashMap<String, int[]> ints = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, long[]> longs = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, double[]> doubles = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, boolean[]> booleans = new ConcurrentHashMap<>();
+
+    ArrayCache(Configuration tree, int version) {
+        this.tree = tree;
+        this.version = version;
+    }
+
+    boolean isValid(Configuration tree, int version) {
+        return this.tree == tree && this.version == version;
+    }
+
+    int[] getIntArray(String path) {
+        int[] array = ints.get(path);
+        if (array == null) {
+            List<?> list = Sections.parent(tree, path).getList(Sections.key(path));
+            array = new int[countNumbers(list)];
+            int i = 0;
+            for (Object object : list) {
+                if (object instanceof Number) array[i++] = ((Number) object).intValue();
+            }
+            ints.put(path, array);
+        }
+        return array;
+    }
+
+    long[] getLongArray(String path) {
+        long[] array = longs.get(path);
+        if (array == null) {
+            List<?> list = Sections.parent(tree, path).getList(Sections.key(path));
+            array = new long[countNumbers(list)];
+            int i = 0;
+            for (Object object : list) {
+                if (object instanceof Number) array[i++] = ((Number) object).longValue();
+            }
+            longs.put(path, array);
+        }
+        return array;
+    }
+
+    double[] getDoubleArray(String path) {
+        double[] array = doubles.get(path);
+        if (array == null) {
+            List<?> list = Sections.parent(tree, path).getList(Sections.key(path));
+            array = new double[countNumbers(list)];
+            int i = 0;
+            for (Object object : list) {
+                if (object instanceof Number) array[i++] = ((Number) object).doubleValue();
+            }
+            doubles.put(path, array);
+        }
+        return array;
+    }
+
+    boolean[] getBooleanArray(String path) {
+        boolean[] array = booleans.get(path);
+        if (array == null) {
+            List<?> list = Sections.parent(tree, path).getList(Sections.key(path));
+            int count = 0;
+            for (Object object : list) {
+                if (object instanceof Boolean) count++;
+            }
+            array = new boolean[count];
+            int i = 0;
+            for (Object object : list) {
+                if (object instanceof Boolean) array[i++] = (Boolean) object;
+            }
+            booleans.put(path, array);
+        }
+        return array;
+    }
+
+    private static int countNumbers(List<?> list) {
+        int count = 0;
+        for (Object object : list) {
+            if (object instanceof Number) count++;
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,162 @@
+package fr.onecraft.config;
+
+import fr.onecraft.config.exception.InvalidConfigurationException;
+import net.md_5.bungee.config.Configuration;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Instance whose annotated fields are filled from a configuration
+ *
+ * @param <T> Type of the instance
+ */
+final class Binding<T> {
+
+    private final T target;
+    private final List<Setter> setters;
+
+    private Binding(T target, List<Setter> setters) {
+        this.target = target;
+        this.setters = setters;
+    }
+
+    /**
+     * Create an instance of the given class and prepare setters of its fields
+     */
+    static <T> Binding<T> create(Class<T> type) throws InvalidConfigurationException {
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        T target;
+        try {
+            java.lang.reflect.Constructor<T> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            target = type.cast(lookup.unreflectConstructor(constructor).invoke());
+        } catch (NoSuchMethodException e) {
+            throw new InvalidConfigurationException(type.getName() + " needs a constructor without parameters");
+        } catch (Throwable e) {
+            throw new InvalidConfigurationException("Can't create " + type.getName(), e);
+        }
+
+        List<Setter> setters = new ArrayList<>();
+        for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                ConfigValue annotation = field.getAnnotation(ConfigValue.class);
+                if (annotation == null) continue;
+
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
+                    throw new InvalidConfigurationException("Field " + field.getName() + " of " + type.getName() + " can't be static or final");
+                }
+
+                try {
+                    field.setAccessible(true);
+                    // Default value is the one set by the constructor
+                    Object initial = field.get(target);
+                    MethodHandle setter = lookup.unreflectSetter(field)
+                            .asType(MethodType.methodType(void.class, Object.class, Object.class));
+                    setters.add(new Setter(annotation.value(), field.getType(), setter, initial));
+                } catch (IllegalAccessException | RuntimeException e) {
+                    throw new InvalidConfigurationException("Can't access field " + field.getName() + " of " + type.getName(), e);
+                }
+            }
+        }
+
+        return new Binding<>(target, setters);
+    }
+
+    T target() {
+        return target;
+    }
+
+    /**
+     * Convert values of the tree, without touching the instance
+     *
+     * @throws InvalidConfigurationException if a value doesn't match its field
+     */
+    Object[] resolve(Configuration tree) throws InvalidConfigurationException {
+        Object[] values = new Object[setters.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = setters.get(i).resolve(tree);
+        }
+        return values;
+    }
+
+    /**
+     * Set values returned by {@link #resolve(Configuration)}
+     */
+    void apply(Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            setters.get(i).set(target, values[i]);
+        }
+    }
+
+    private static final class Setter {
+
+        private final String path;
+        private final Class<?> type;
+        private final MethodHandle setter;
+        private final Object initial;
+
+        private Setter(String path, Class<?> type, MethodHandle setter, Object initial) {
+            this.path = path;
+            this.type = type;
+            this.setter = setter;
+            this.initial = initial;
+        }
+
+        private Object resolve(Configuration tree) throws InvalidConfigurationException {
+            Configuration section = Sections.parent(tree, path);
+            String key = Sections.key(path);
+            Object value = section.get(key, null);
+            if (value == null) value = section.getDefault(key);
+            if (value == null) return initial;
+
+            Object converted = convert(value);
+            if (converted == null) {
+                throw new InvalidConfigurationException("Value at \"" + path + "\" is a " + value.getClass().getSimpleName()
+                        + ", expected " + type.getSimpleName());
+            }
+            return converted;
+        }
+
+        @SuppressWarnings("rawtypes")
+        private Object convert(Object value) {
+            if (value instanceof Number) {
+                Number number = (Number) value;
+                if (type == int.class || type == Integer.class) return number.intValue();
+                if (type == long.class || type == Long.class) return number.longValue();
+                if (type == double.class || type == Double.class) return number.doubleValue();
+                if (type == float.class || type == Float.class) return number.floatValue();
+                if (type == short.class || type == Short.class) return number.shortValue();
+                if (type == byte.class || type == Byte.class) return number.byteValue();
+            }
+            if (value instanceof Boolean && type == boolean.class) return value;
+            if (value instanceof Character && type == char.class) return value;
+            if (value instanceof String && type.isEnum()) {
+                String name = ((String) value).trim();
+                for (Object constant : type.getEnumConstants()) {
+                    if (((Enum) constant).name().equalsIgnoreCase(name)) return constant;
+                }
+                return null;
+            }
+            return type.isInstance(value) ? value : null;
+        }
+
+        private void set(Object target, Object value) {
+            try {
+                setter.invokeExact(target, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+    }
+
+}
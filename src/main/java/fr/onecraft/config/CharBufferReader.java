@@ -0,0 +1,47 @@
+package fr.onecraft.config;
+
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * Reader consuming a buffer in place
+ */
+final class CharBufferReader extends Reader {
+
+    private final CharBuffer buffer;
+
+    CharBufferReader(CharBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() : -1;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+        if (len == 0) return 0;
+        if (!buffer.hasRemaining()) return -1;
+
+        int count = Math.min(len, buffer.remaining());
+        buffer.get(cbuf, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        int count = (int) Math.min(Math.max(n, 0), buffer.remaining());
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public boolean ready() {
+        return true;
+    }
+
+    @Override
+    public void close() {}
+
+}
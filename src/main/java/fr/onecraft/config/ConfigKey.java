@@ -0,0 +1,122 @@
+package fr.onecraft.config;
+
+import net.md_5.bungee.config.Configuration;
+
+/**
+ * Path compiled against a {@link FileConfiguration}
+ * <p>
+ * The value is resolved once, then served from cache until
+ * the configuration is reloaded or modified.
+ * <p>
+ * Edits made directly on a section or list taken from the configuration
+ * can't be seen until {@link FileConfiguration#markDirty()} is called.
+ *
+ * @param <T> Type of the value
+ */
+public final class ConfigKey<T> {
+
+    private final FileConfiguration configuration;
+    private final String path;
+    private final Class<T> type;
+    private final T def;
+    private final boolean useDefaults;
+
+    private Resolved<T> resolved = null;
+
+    ConfigKey(FileConfiguration configuration, String path, Class<T> type, T def, boolean useDefaults) {
+
+        if (path == null) throw new IllegalArgumentException("path can't be null");
+        if (type == null) throw new IllegalArgumentException("type can't be null");
+
+        this.configuration = configuration;
+        this.path = path;
+        this.type = type;
+        this.def = def;
+        this.useDefaults = useDefaults;
+    }
+
+    public FileConfiguration configuration() {
+        return configuration;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Get current value of this key
+     *
+     * @return value, or default value if missing or of another type
+     */
+    public T get() {
+        Configuration tree = configuration.tree(path);
+        int version = configuration.version();
+
+        Resolved<T> current = resolved;
+        if (current == null || current.tree != tree || current.version != version) {
+            current = new Resolved<>(tree, version, resolve(tree));
+            resolved = current;
+        }
+
+        return current.value;
+    }
+
+    private T resolve(Configuration tree) {
+        // Missing sections aren't created in the tree, other threads may read it
+        Configuration section = Sections.parent(tree, path);
+        String key = Sections.key(path);
+        Object value = section.get(key, null);
+        T fallback = def;
+
+        if (useDefaults) {
+            Object defValue = section.getDefault(key);
+            if (value == null) value = defValue;
+            if (fallback == null) fallback = convert(defValue, null);
+        }
+
+        return convert(value, fallback);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T convert(Object value, T fallback) {
+        if (value == null) return fallback;
+        if (type.isInstance(value)) return (T) value;
+
+        // Same rules as Configuration getters, numbers are converted
+        if (value instanceof Number) {
+            Number number = (Number) value;
+            if (type == Integer.class) return (T) Integer.valueOf(number.intValue());
+            if (type == Long.class) return (T) Long.valueOf(number.longValue());
+            if (type == Double.class) return (T) Double.valueOf(number.doubleValue());
+            if (type == Float.class) return (T) Float.valueOf(number.floatValue());
+            if (type == Short.class) return (T) Short.valueOf(number.shortValue());
+            if (type == Byte.class) return (T) Byte.valueOf(number.byteValue());
+        }
+
+        return fallback;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigKey{" + path + ", " + type.getSimpleName() + "}";
+    }
+
+    private static final class Resolved<T> {
+
+        private final Configuration tree;
+        private final int version;
+        private final T value;
+
+        private Resolved(Configuration tree, int version, T value) {
+            this.tree = tree;
+            this.version = version;
+            this.value = value;
+        }
+
+    }
+
+}
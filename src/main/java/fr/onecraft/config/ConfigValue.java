@@ -0,0 +1,22 @@
+package fr.onecraft.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Field bound to a configuration path
+ *
+ * @see FileConfiguration#bind(Class)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface ConfigValue {
+
+    /**
+     * Path of the value
+     */
+    String value();
+
+}
@@ -0,0 +1,20 @@
+package fr.onecraft.config;
+
+/**
+ * Listener of the changes of a path
+ *
+ * @see FileConfiguration#addListener(String, ConfigurationListener)
+ */
+@FunctionalInterface
+public interface ConfigurationListener {
+
+    /**
+     * Called once the new tree is in place
+     *
+     * @param path     Path listened
+     * @param oldValue Previous value, a section or null if it was missing
+     * @param newValue New value, a section or null if it's missing
+     */
+    void changed(String path, Object oldValue, Object newValue);
+
+}
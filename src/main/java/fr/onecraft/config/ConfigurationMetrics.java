@@ -0,0 +1,43 @@
+package fr.onecraft.config;
+
+/**
+ * Receives measures of a configuration
+ * <p>
+ * Methods are called by the thread loading or saving the configuration,
+ * so implementations must be fast and thread safe.
+ */
+public interface ConfigurationMetrics {
+
+    enum Phase {
+        /** Whole load of a file, parsing included */
+        LOAD,
+        /** Parsing of the document into a tree */
+        PARSE,
+        /** Merge of the defaults before saving */
+        MERGE,
+        /** Conversion of the tree to YAML */
+        SERIALIZE,
+        /** Whole save to a file, merge and serialization included */
+        WRITE
+    }
+
+    /**
+     * Duration of a phase, in nanoseconds
+     */
+    void timing(Phase phase, long nanos);
+
+    void bytesRead(long bytes);
+
+    void bytesWritten(long bytes);
+
+    /**
+     * Load of a file, successful or not
+     */
+    void loaded(boolean success);
+
+    /**
+     * Save to a file, successful or not
+     */
+    void saved(boolean success);
+
+}
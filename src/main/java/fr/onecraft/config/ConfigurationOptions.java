@@ -6,6 +6,11 @@ public class ConfigurationOptions {
     private String header = null;
     private boolean copyHeader = true;
     private boolean copyDefaults = false;
+    private boolean snapshot = false;
+    private boolean memoryMap = false;
+    private boolean lazy = false;
+    private boolean binaryCache = false;
+    private boolean preserveComments = false;
 
     protected ConfigurationOptions(FileConfiguration configuration) {
         this.configuration = configuration;
@@ -21,6 +26,7 @@ public class ConfigurationOptions {
 
     public ConfigurationOptions copyDefaults(boolean value) {
         this.copyDefaults = value;
+        configuration.markDirty();
         return this;
     }
 
@@ -30,6 +36,78 @@ public class ConfigurationOptions {
 
     public ConfigurationOptions header(String value) {
         this.header = value;
+        configuration.markDirty();
+        return this;
+    }
+
+    /**
+     * In snapshot mode, changes are applied on a copy of the tree which
+     * is then published at once, so readers never see a partial change
+     */
+    public boolean snapshot() {
+        return snapshot;
+    }
+
+    public ConfigurationOptions snapshot(boolean value) {
+        this.snapshot = value;
+        return this;
+    }
+
+    /**
+     * Map large files in memory when loading them
+     */
+    public boolean memoryMap() {
+        return memoryMap;
+    }
+
+    public ConfigurationOptions memoryMap(boolean value) {
+        this.memoryMap = value;
+        return this;
+    }
+
+    /**
+     * In lazy mode, top level sections are only parsed when first read
+     * <p>
+     * The syntax of the whole file is still checked when loading, so errors are
+     * reported by the load. Takes effect on next load.
+     */
+    public boolean lazy() {
+        return lazy;
+    }
+
+    public ConfigurationOptions lazy(boolean value) {
+        this.lazy = value;
+        return this;
+    }
+
+    /**
+     * Keep a binary copy of the parsed tree next to the file, used
+     * instead of parsing the file as long as it doesn't change
+     * <p>
+     * Takes precedence over lazy mode when loading a file.
+     */
+    public boolean binaryCache() {
+        return binaryCache;
+    }
+
+    public ConfigurationOptions binaryCache(boolean value) {
+        this.binaryCache = value;
+        return this;
+    }
+
+    /**
+     * Keep the text of the loaded file, and only rewrite the entries
+     * which changed when saving, so comments and layout are kept
+     * <p>
+     * Documents which can't be patched are written again as a whole.
+     * Takes effect on next load, and precedence over lazy mode and binary cache.
+     */
+    public boolean preserveComments() {
+        return preserveComments;
+    }
+
+    public ConfigurationOptions preserveComments(boolean value) {
+        this.preserveComments = value;
         return this;
     }
 
@@ -39,6 +117,7 @@ public class ConfigurationOptions {
 
     public ConfigurationOptions copyHeader(boolean value) {
         copyHeader = value;
+        configuration.markDirty();
         return this;
     }
 
@@ -0,0 +1,29 @@
+package fr.onecraft.config;
+
+import fr.onecraft.config.exception.InvalidConfigurationException;
+import net.md_5.bungee.config.Configuration;
+
+import java.nio.CharBuffer;
+
+/**
+ * Parser turning a document into a tree
+ * <p>
+ * A parser may only support part of YAML: documents it can't handle
+ * are parsed by SnakeYAML instead.
+ *
+ * @see FileConfiguration#setParser(ConfigurationParser)
+ */
+@FunctionalInterface
+public interface ConfigurationParser {
+
+    /**
+     * Parse a document
+     *
+     * @param contents Content of the document
+     * @param defaults Defaults of the tree, may be null
+     * @return tree, or null if the document isn't supported by this parser
+     * @throws InvalidConfigurationException if the document is invalid
+     */
+    Configuration parse(CharBuffer contents, Configuration defaults) throws InvalidConfigurationException;
+
+}
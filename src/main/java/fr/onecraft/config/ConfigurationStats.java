@@ -0,0 +1,189 @@
+package fr.onecraft.config;
+
+import net.md_5.bungee.config.Configuration;
+
+import java.beans.ConstructorProperties;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics kept in memory, readable through JMX
+ */
+public class ConfigurationStats implements ConfigurationMetrics, ConfigurationStatsMXBean {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final FileConfiguration configuration;
+
+    private final Map<Phase, Histogram> timings = new EnumMap<>(Phase.class);
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder saves = new LongAdder();
+    private final LongAdder saveFailures = new LongAdder();
+
+    /**
+     * @param configuration Configuration measured, used to count keys
+     */
+    public ConfigurationStats(FileConfiguration configuration) {
+        this.configuration = configuration;
+        for (Phase phase : Phase.values()) {
+            timings.put(phase, new Histogram());
+        }
+    }
+
+    // ----------------------------------------
+    // METRICS
+    // ----------------------------------------
+
+    @Override
+    public void timing(Phase phase, long nanos) {
+        timings.get(phase).record(nanos);
+    }
+
+    @Override
+    public void bytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    @Override
+    public void bytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    @Override
+    public void loaded(boolean success) {
+        (success ? loads : loadFailures).increment();
+    }
+
+    @Override
+    public void saved(boolean success) {
+        (success ? saves : saveFailures).increment();
+    }
+
+    // ----------------------------------------
+    // MXBEAN
+    // ----------------------------------------
+
+    @Override
+    public Map<String, Timing> getTimings() {
+        Map<String, Timing> result = new LinkedHashMap<>();
+        for (Map.Entry<Phase, Histogram> entry : timings.entrySet()) {
+            Histogram histogram = entry.getValue();
+            result.put(entry.getKey().name(), new Timing(
+                    histogram.count(),
+                    histogram.mean() / NANOS_PER_MILLI,
+                    histogram.percentile(0.5) / NANOS_PER_MILLI,
+                    histogram.percentile(0.99) / NANOS_PER_MILLI,
+                    histogram.max() / NANOS_PER_MILLI
+            ));
+        }
+        return result;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public int getKeyCount() {
+        // Counted on demand, so loads don't pay for it
+        return countKeys(configuration.config);
+    }
+
+    @Override
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    @Override
+    public long getLoadFailures() {
+        return loadFailures.sum();
+    }
+
+    @Override
+    public long getSaves() {
+        return saves.sum();
+    }
+
+    @Override
+    public long getSaveFailures() {
+        return saveFailures.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (Histogram histogram : timings.values()) {
+            histogram.reset();
+        }
+        bytesRead.reset();
+        bytesWritten.reset();
+        loads.reset();
+        loadFailures.reset();
+        saves.reset();
+        saveFailures.reset();
+    }
+
+    private static int countKeys(Configuration section) {
+        Map<String, Object> values = Sections.values(section);
+        if (values == null) values = Sections.toValues(section);
+
+        int count = 0;
+        for (Object value : values.values()) {
+            count += value instanceof Configuration ? countKeys((Configuration) value) : 1;
+        }
+        return count;
+    }
+
+    /**
+     * Durations of a phase, in milliseconds
+     */
+    public static class Timing {
+
+        private final long count;
+        private final double mean;
+        private final double median;
+        private final double p99;
+        private final double max;
+
+        @ConstructorProperties({"count", "mean", "median", "p99", "max"})
+        public Timing(long count, double mean, double median, double p99, double max) {
+            this.count = count;
+            this.mean = mean;
+            this.median = median;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getMedian() {
+            return median;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+    }
+
+}
@@ -0,0 +1,34 @@
+package fr.onecraft.config;
+
+import java.util.Map;
+
+/**
+ * Statistics of a configuration, as exposed through JMX
+ */
+public interface ConfigurationStatsMXBean {
+
+    /**
+     * Timings by phase, in milliseconds
+     */
+    Map<String, ConfigurationStats.Timing> getTimings();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    /**
+     * Number of values in the current tree, sections excluded
+     */
+    int getKeyCount();
+
+    long getLoads();
+
+    long getLoadFailures();
+
+    long getSaves();
+
+    long getSaveFailures();
+
+    void reset();
+
+}
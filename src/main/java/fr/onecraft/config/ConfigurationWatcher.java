@@ -0,0 +1,262 @@
+package fr.onecraft.config;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Shared watcher reloading configurations when their file changes
+ * <p>
+ * A single thread watches every registered file. Bursts of events are
+ * merged: a configuration is reloaded once its file has been quiet for
+ * {@link #QUIET_DELAY} ms, or at most {@link #MAX_DELAY} ms after the
+ * first event.
+ * <p>
+ * A watched directory which is deleted is watched again once it's recreated,
+ * its files are then reloaded.
+ */
+final class ConfigurationWatcher implements Runnable {
+
+    static final long QUIET_DELAY = 300;
+    static final long MAX_DELAY = 2000;
+    static final long RETRY_DELAY = 1000;
+
+    private static final ConfigurationWatcher INSTANCE = new ConfigurationWatcher();
+    private static final Logger LOGGER = Logger.getLogger(ConfigurationWatcher.class.getName());
+
+    private final Map<Path, List<PluginConfiguration>> files = new HashMap<>();
+    private final Map<Path, WatchKey> directories = new HashMap<>();
+    private final Map<Path, Pending> pending = new HashMap<>();
+    private final Set<Path> lost = new HashSet<>();
+
+    private WatchService service = null;
+    private Thread thread = null;
+
+    private ConfigurationWatcher() {}
+
+    static ConfigurationWatcher get() {
+        return INSTANCE;
+    }
+
+    // ----------------------------------------
+    // REGISTRATION
+    // ----------------------------------------
+
+    synchronized void register(PluginConfiguration configuration) throws IOException {
+        Path file = configuration.configFile.toPath().toAbsolutePath().normalize();
+        Path directory = file.getParent();
+
+        if (service == null) {
+            service = FileSystems.getDefault().newWatchService();
+        }
+
+        if (!directories.containsKey(directory)) {
+            directories.put(directory, directory.register(service, ENTRY_CREATE, ENTRY_MODIFY));
+            lost.remove(directory);
+        }
+
+        List<PluginConfiguration> list = files.get(file);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            files.put(file, list);
+        }
+        if (!list.contains(configuration)) {
+            list.add(configuration);
+        }
+
+        if (thread == null) {
+            thread = new Thread(this, "BungeeYAML Watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    synchronized void unregister(PluginConfiguration configuration) {
+        Path file = configuration.configFile.toPath().toAbsolutePath().normalize();
+        Path directory = file.getParent();
+
+        List<PluginConfiguration> list = files.get(file);
+        if (list == null || !list.remove(configuration)) return;
+        if (!list.isEmpty()) return;
+
+        files.remove(file);
+        pending.remove(file);
+
+        // Stop watching the directory when it has no more files
+        for (Path other : files.keySet()) {
+            if (other.getParent().equals(directory)) return;
+        }
+
+        WatchKey key = directories.remove(directory);
+        if (key != null) key.cancel();
+        lost.remove(directory);
+
+        if (directories.isEmpty() && lost.isEmpty()) {
+            // Thread stops once the service is closed
+            close();
+        }
+    }
+
+    private void close() {
+        try {
+            service.close();
+        } catch (IOException ignored) {
+        }
+        service = null;
+        thread = null;
+    }
+
+    // ----------------------------------------
+    // WATCH LOOP
+    // ----------------------------------------
+
+    @Override
+    public void run() {
+        WatchService watchService;
+        synchronized (this) {
+            watchService = service;
+        }
+
+        while (true) {
+            try {
+                WatchKey key;
+                long wait = nextDeadline();
+                if (wait < 0) {
+                    key = watchService.take();
+                } else {
+                    key = watchService.poll(wait, TimeUnit.MILLISECONDS);
+                }
+
+                if (key != null) {
+                    collect(key);
+                }
+                retry();
+                fire();
+
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private synchronized void collect(WatchKey key) {
+        Path directory = (Path) key.watchable();
+        long now = System.currentTimeMillis();
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // Events lost, consider every file of the directory as changed
+                for (Path file : files.keySet()) {
+                    if (file.getParent().equals(directory)) touch(file, now);
+                }
+            } else {
+                Path file = directory.resolve((Path) event.context());
+                if (files.containsKey(file)) touch(file, now);
+            }
+        }
+
+        if (!key.reset() && directories.remove(directory, key)) {
+            // Directory deleted, watched again once it's back
+            lost.add(directory);
+        }
+    }
+
+    /**
+     * Watch again deleted directories which have been recreated
+     */
+    private synchronized void retry() {
+        if (lost.isEmpty() || service == null) return;
+
+        long now = System.currentTimeMillis();
+        Iterator<Path> iterator = lost.iterator();
+        while (iterator.hasNext()) {
+            Path directory = iterator.next();
+            if (!Files.isDirectory(directory)) continue;
+
+            try {
+                directories.put(directory, directory.register(service, ENTRY_CREATE, ENTRY_MODIFY));
+            } catch (IOException e) {
+                continue;
+            }
+            iterator.remove();
+
+            // Files may have been written before the directory was watched
+            for (Path file : files.keySet()) {
+                if (file.getParent().equals(directory)) touch(file, now);
+            }
+        }
+    }
+
+    private void touch(Path file, long now) {
+        Pending current = pending.get(file);
+        if (current == null) {
+            pending.put(file, new Pending(now));
+        } else {
+            current.last = now;
+        }
+    }
+
+    /**
+     * Time to wait until the next reload or retry, -1 if there is none
+     */
+    private synchronized long nextDeadline() {
+        if (pending.isEmpty() && lost.isEmpty()) return -1;
+
+        long now = System.currentTimeMillis();
+        long next = lost.isEmpty() ? Long.MAX_VALUE : now + RETRY_DELAY;
+        for (Pending entry : pending.values()) {
+            next = Math.min(next, entry.deadline());
+        }
+        return Math.max(next - now, 0);
+    }
+
+    private void fire() {
+        List<PluginConfiguration> reload = new ArrayList<>();
+
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Iterator<Map.Entry<Path, Pending>> iterator = pending.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Path, Pending> entry = iterator.next();
+                if (entry.getValue().deadline() <= now) {
+                    iterator.remove();
+                    List<PluginConfiguration> list = files.get(entry.getKey());
+                    if (list != null) reload.addAll(list);
+                }
+            }
+        }
+
+        for (PluginConfiguration configuration : reload) {
+            // Skip events caused by our own save
+            if (configuration.isSavedFile()) continue;
+
+            try {
+                configuration.reloadAsync();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Can't reload config " + configuration.configFile, e);
+            }
+        }
+    }
+
+    private static final class Pending {
+
+        private final long first;
+        private long last;
+
+        private Pending(long time) {
+            this.first = time;
+            this.last = time;
+        }
+
+        private long deadline() {
+            return Math.min(last + QUIET_DELAY, first + MAX_DELAY);
+        }
+
+    }
+
+}
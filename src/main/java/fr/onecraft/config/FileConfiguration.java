@@ -10,7 +10,18 @@ import org.yaml.snakeyaml.error.YAMLException;
 import org.yaml.snakeyaml.reader.UnicodeReader;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
 
 /**
  * YML Configuration
@@ -21,12 +32,31 @@ public class FileConfiguration {
     // VARIABLES
     // ----------------------------------------
 
+    private static final Logger LOGGER = Logger.getLogger(FileConfiguration.class.getName());
+
     private final ConfigurationProvider provider = ConfigurationProvider.getProvider(YamlConfiguration.class);
 
-    protected Configuration config = new Configuration();
+    protected volatile Configuration config = new Configuration();
     protected FileConfiguration defaults = null;
     protected ConfigurationOptions options = null;
 
+    private final AtomicInteger version = new AtomicInteger();
+    private final Object writeLock = new Object();
+
+    private final List<Binding<?>> bindings = new CopyOnWriteArrayList<>();
+    private final List<Subscription> listeners = new CopyOnWriteArrayList<>();
+    private volatile ArrayCache arrays = null;
+    private volatile LazyDocument document = null;
+    private volatile SourceDocument source = null;
+    private volatile ConfigurationMetrics metrics = null;
+    private volatile AccessProfiler profiler = null;
+    private volatile ConfigurationParser parser = null;
+
+    private volatile int savedVersion = 0;
+    private volatile int mergedVersion = -1;
+    private volatile Configuration mergedDefaults = null;
+    private volatile int mergedDefaultsVersion = -1;
+
     // ----------------------------------------
     // LOAD
     // ----------------------------------------
@@ -52,29 +82,55 @@ public class FileConfiguration {
     }
 
     public void load(File file, FileConfiguration defaults) throws ConfigurationException {
-        try (Reader reader = new FileReader(file)) {
-            load(reader, defaults);
+        ConfigurationMetrics metrics = this.metrics;
+        if (metrics == null) {
+            loadFile(file, defaults);
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            loadFile(file, defaults);
+            success = true;
+        } finally {
+            metrics.timing(ConfigurationMetrics.Phase.LOAD, System.nanoTime() - start);
+            metrics.loaded(success);
+        }
+    }
+
+    private void loadFile(File file, FileConfiguration defaults) throws ConfigurationException {
+        if (options().binaryCache() && !options().preserveComments()) {
+            loadCached(file, defaults);
+            return;
+        }
+
+        CharBuffer contents;
+        try {
+            ByteBuffer bytes = readBytes(file, options().memoryMap());
+            read(bytes.remaining());
+            contents = decode(bytes);
         } catch (IOException e) {
             throw new IOConfigurationException(e);
         }
+        loadFromBuffer(contents, defaults);
     }
 
     public void load(Reader reader, FileConfiguration defaults) throws ConfigurationException {
 
         StringBuilder builder = new StringBuilder();
 
-        try (BufferedReader input = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader)) {
-
-            String line;
-            while ((line = input.readLine()) != null) {
-                builder.append(line);
-                builder.append('\n');
+        try (Reader input = reader) {
+            char[] buffer = new char[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                builder.append(buffer, 0, read);
             }
         } catch (IOException e) {
             throw new IOConfigurationException(e);
         }
 
-        loadFromString(builder.toString(), defaults);
+        loadFromBuffer(CharBuffer.wrap(builder), defaults);
     }
 
     public void load(InputStream is, FileConfiguration defaults) throws ConfigurationException {
@@ -87,45 +143,253 @@ public class FileConfiguration {
     }
 
     public void loadFromString(String contents, FileConfiguration defaults) throws ConfigurationException {
+        loadFromBuffer(CharBuffer.wrap(contents), defaults);
+    }
+
+    /**
+     * Parse the content of a buffer, without copying it to a String
+     *
+     * @param contents Content of the document, its position is left untouched
+     * @param defaults Default configuration, may be null
+     */
+    protected void loadFromBuffer(CharBuffer contents, FileConfiguration defaults) throws ConfigurationException {
+
+        Configuration defTree = defaults != null ? defaults.fullTree() : null;
+
+        ConfigurationMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
 
+        // Bound fields, listeners and comments need every value, so sections are parsed at once
+        boolean eager = !bindings.isEmpty() || !listeners.isEmpty() || options().preserveComments();
+        LazyDocument lazy = options().lazy() && !eager ? LazyDocument.scan(contents, defTree) : null;
+
+        Configuration tree = lazy != null ? lazy.tree() : parse(contents, defTree);
+        if (metrics != null) metrics.timing(ConfigurationMetrics.Phase.PARSE, System.nanoTime() - start);
+
+        SourceDocument source = options().preserveComments() ? SourceDocument.scan(contents, tree) : null;
+        loadTree(tree, lazy, source, parseHeader(contents), defaults);
+    }
+
+    /**
+     * Load a file through its binary copy, parsing it only when it changed
+     */
+    private void loadCached(File file, FileConfiguration defaults) throws ConfigurationException {
+
+        ByteBuffer bytes;
+        try {
+            bytes = readBytes(file, options().memoryMap());
+        } catch (IOException e) {
+            throw new IOConfigurationException(e);
+        }
+
+        long size = bytes.remaining();
+        read(size);
+        long modified = file.lastModified();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.duplicate());
+        long hash = crc.getValue();
+
+        Configuration defTree = defaults != null ? defaults.fullTree() : null;
+        File cache = SnapshotCache.cacheFile(file);
+
+        ConfigurationMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+
+        SnapshotCache.Snapshot snapshot = SnapshotCache.read(cache, size, modified, hash);
+        if (snapshot != null) {
+            Configuration tree = Sections.fromMap(snapshot.values, defTree);
+            if (metrics != null) metrics.timing(ConfigurationMetrics.Phase.PARSE, System.nanoTime() - start);
+            loadTree(tree, null, null, snapshot.header, defaults);
+            return;
+        }
+
+        CharBuffer contents;
         try {
-            config = provider.load(contents, defaults != null ? defaults.config : null);
+            contents = decode(bytes);
+        } catch (IOException e) {
+            throw new IOConfigurationException(e);
+        }
+
+        Configuration tree = parse(contents, defTree);
+        if (metrics != null) metrics.timing(ConfigurationMetrics.Phase.PARSE, System.nanoTime() - start);
+        String header = parseHeader(contents);
+
+        try {
+            // Written before the tree is handed out, so it can't change meanwhile
+            SnapshotCache.write(cache, size, modified, hash, header, tree);
+        } catch (IOException ignored) {
+            // The copy is only an optimization, next load parses the file again
+        }
+
+        loadTree(tree, null, null, header, defaults);
+    }
+
+    private Configuration parse(CharBuffer contents, Configuration defTree) throws InvalidConfigurationException {
+        ConfigurationParser parser = this.parser;
+        if (parser != null) {
+            Configuration tree = parser.parse(contents.duplicate(), defTree);
+            if (tree != null) return tree;
+        }
+
+        try {
+            return provider.load(new CharBufferReader(contents.duplicate()), defTree);
         } catch (YAMLException e) {
             throw new InvalidConfigurationException(e);
         } catch (ClassCastException e) {
             throw new InvalidConfigurationException("Top level is not a Map.");
         }
+    }
 
-        String header = parseHeader(contents);
-        if (!header.isEmpty()) {
-            options().header(header);
-        }
+    private void loadTree(Configuration tree, LazyDocument lazy, SourceDocument source, String header, FileConfiguration defaults) throws InvalidConfigurationException {
+
+        Configuration previous;
+        synchronized (writeLock) {
+            // Bindings or listeners added while parsing need every value
+            if (lazy != null && (!bindings.isEmpty() || !listeners.isEmpty())) {
+                tree = lazy.parse(this::parse, tree, null);
+                lazy = null;
+            }
+
+            // Bindings can't be added or removed between resolving and applying values
+            List<Map.Entry<Binding<?>, Object[]>> bound = resolveBindings(tree);
 
-        this.defaults = defaults;
+            if (!header.isEmpty()) {
+                options().header(header);
+            }
+
+            previous = previousTree();
+            this.defaults = defaults;
+            this.document = lazy;
+            this.source = source;
+            savedVersion = publish(tree);
+            applyBindings(bound);
+        }
+        fireListeners(previous, tree);
     }
 
     // ----------------------------------------
     // SAVE
     // ----------------------------------------
 
+    /**
+     * Save to a temporary file which then replaces the target,
+     * so the file is never left half written
+     */
     public void save(File file) throws ConfigurationException {
-        try (Writer writer = new FileWriter(file)) {
-            save(writer);
+        write(file);
+    }
+
+    /**
+     * @return content written to the file
+     */
+    byte[] write(File file) throws ConfigurationException {
+        ConfigurationMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return saveFile(file);
+        }
+
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            byte[] bytes = saveFile(file);
+            success = true;
+            return bytes;
+        } finally {
+            metrics.timing(ConfigurationMetrics.Phase.WRITE, System.nanoTime() - start);
+            metrics.saved(success);
+        }
+    }
+
+    private byte[] saveFile(File file) throws ConfigurationException {
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            merge();
+
+            // The tree can't change while it's written to memory,
+            // changes made while writing the file keep it dirty
+            int saving;
+            SourceDocument saved;
+            StringWriter writer = new StringWriter();
+            synchronized (writeLock) {
+                saving = version();
+                saved = serialize(writer);
+            }
+            byte[] bytes = writer.toString().getBytes(StandardCharsets.UTF_8);
+            Files.write(temp, bytes);
+            move(temp, target);
+            temp = null;
+            savedVersion = saving;
+            source = saved;
+
+            ConfigurationMetrics metrics = this.metrics;
+            if (metrics != null) metrics.bytesWritten(bytes.length);
+            return bytes;
         } catch (IOException e) {
             throw new IOConfigurationException(e);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                }
+            }
         }
     }
 
     public void save(Writer writer) throws ConfigurationException {
+        merge();
+        synchronized (writeLock) {
+            serialize(writer);
+        }
+    }
+
+    /**
+     * Parse pending sections and merge defaults into the tree when enabled
+     */
+    private void merge() {
+        materialize(null);
+
+        ConfigurationMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+
+        final FileConfiguration def = defaults;
+        if (def != null && def.config != null && options().copyDefaults() && !isMerged(def)) {
+            final Configuration defTree = def.fullTree();
+            final int defVersion = def.version();
+            update(tree -> copyDefaults(tree, defTree));
+            mergedVersion = version();
+            mergedDefaults = defTree;
+            mergedDefaultsVersion = defVersion;
+        }
+
+        if (metrics != null) metrics.timing(ConfigurationMetrics.Phase.MERGE, System.nanoTime() - start);
+    }
+
+    /**
+     * Write the tree, patching the loaded document when comments are preserved
+     * <p>
+     * Must hold the write lock, setters change the tree in place outside of snapshot mode.
+     *
+     * @return document written, or null if the whole tree was written
+     */
+    private SourceDocument serialize(Writer writer) throws ConfigurationException {
         try {
-            String header = buildHeader();
-            if (header != null) {
-                writer.write(header);
-            }
-            if (defaults != null && defaults.config != null && options().copyDefaults()) {
-                copyDefaults(config, defaults.config);
+            ConfigurationMetrics metrics = this.metrics;
+            long start = metrics != null ? System.nanoTime() : 0;
+
+            Configuration tree = config;
+            SourceDocument source = this.source;
+            SourceDocument patched = source != null ? source.patch(tree, provider) : null;
+            if (patched != null) {
+                writer.write(patched.text());
+            } else {
+                writeHeader(writer);
+                YamlEmitter.save(provider, tree, writer);
             }
-            provider.save(config, writer);
+            if (metrics != null) metrics.timing(ConfigurationMetrics.Phase.SERIALIZE, System.nanoTime() - start);
+            return patched;
         } catch (YAMLException | IOException e) {
             throw new IOConfigurationException(e);
         }
@@ -140,11 +404,76 @@ public class FileConfiguration {
         }
     }
 
+    static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Whether the tree changed since it was last loaded or saved to a file
+     */
+    public boolean isDirty() {
+        if (version() != savedVersion) return true;
+
+        // Defaults not merged yet would change the saved file
+        FileConfiguration def = defaults;
+        return def != null && options().copyDefaults() && !isMerged(def);
+    }
+
+    /**
+     * Whether neither the tree nor the defaults changed since the last merge
+     */
+    private boolean isMerged(FileConfiguration def) {
+        return mergedVersion == version()
+                && mergedDefaults == def.config
+                && mergedDefaultsVersion == def.version();
+    }
+
+    /**
+     * Flag the tree as changed, after edits made directly on sections or lists
+     * <p>
+     * Such edits don't go through {@link #set(String, Object)} and can't be
+     * tracked: until this is called, they aren't saved by a save skipping
+     * unchanged trees, and compiled keys keep their previous value.
+     */
+    public void markDirty() {
+        changed();
+    }
+
     // ----------------------------------------
     // GETTERS
     // ----------------------------------------
 
+    /**
+     * Get current tree
+     * <p>
+     * Edits made directly on the tree must be followed by {@link #markDirty()}.
+     */
     public Configuration getConfig() {
+        return getConfig(null);
+    }
+
+    /**
+     * Get tree with at least the section of a path parsed
+     * <p>
+     * Only differs from {@link #getConfig()} in lazy mode, where it
+     * avoids parsing sections unrelated to the path.
+     *
+     * @param path Path about to be read, null to parse the whole tree
+     * @return current tree
+     */
+    public Configuration getConfig(String path) {
+        return tree(path);
+    }
+
+    /**
+     * Tree with at least the section of a path parsed, for reads which don't hand it out
+     */
+    protected Configuration tree(String path) {
+        materialize(path);
         return config;
     }
 
@@ -152,6 +481,50 @@ public class FileConfiguration {
         return defaults;
     }
 
+    /**
+     * Get hook receiving load and save measures, null if disabled
+     */
+    public ConfigurationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set hook receiving load and save measures
+     *
+     * @param metrics Hook, or null to disable measures
+     * @see ConfigurationStats
+     */
+    public void setMetrics(ConfigurationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public AccessProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Set profiler of the paths read by getters
+     *
+     * @param profiler Profiler, or null to stop profiling
+     */
+    public void setProfiler(AccessProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public ConfigurationParser getParser() {
+        return parser;
+    }
+
+    /**
+     * Set parser tried before SnakeYAML when loading
+     *
+     * @param parser Parser, or null to only use SnakeYAML
+     * @see SimpleYamlParser
+     */
+    public void setParser(ConfigurationParser parser) {
+        this.parser = parser;
+    }
+
     public ConfigurationOptions options() {
         if (options == null) {
             options = new ConfigurationOptions(this);
@@ -159,194 +532,662 @@ public class FileConfiguration {
         return options;
     }
 
+    // ----------------------------------------
+    // UPDATE
+    // ----------------------------------------
+
+    /**
+     * Apply a batch of changes to the tree
+     * <p>
+     * In snapshot mode, changes are made on a deep copy which replaces
+     * the current tree once the editor returns.
+     *
+     * @param editor Changes to apply
+     */
+    public void update(Consumer<Configuration> editor) {
+        update(null, editor);
+    }
+
+    private void update(String path, Consumer<Configuration> editor) {
+        synchronized (writeLock) {
+            Configuration current = tree(path);
+            if (options().snapshot()) {
+                // A single path only needs its sections copied, the rest is shared with readers
+                Configuration defTree = defaults != null ? defaults.fullTree() : null;
+                Configuration copy = path != null ? Sections.copyPath(current, path, defTree) : Sections.copy(current, defTree);
+                editor.accept(copy);
+                publish(copy);
+            } else {
+                editor.accept(current);
+                changed();
+            }
+        }
+    }
+
+    /**
+     * Take the content of another configuration, usually loaded in background
+     *
+     * @param loaded Configuration to copy tree, defaults and header from
+     */
+    protected void replace(FileConfiguration loaded) throws InvalidConfigurationException {
+        Configuration previous;
+        Configuration tree;
+        synchronized (writeLock) {
+            if (!bindings.isEmpty() || !listeners.isEmpty()) loaded.materialize(null);
+            tree = loaded.config;
+            List<Map.Entry<Binding<?>, Object[]>> bound = resolveBindings(tree);
+
+            String header = loaded.options().header();
+            if (header != null && !header.isEmpty()) {
+                options().header(header);
+            }
+            previous = previousTree();
+            this.defaults = loaded.defaults;
+            this.document = loaded.document;
+            this.source = loaded.source;
+            savedVersion = publish(tree);
+            applyBindings(bound);
+        }
+        fireListeners(previous, tree);
+    }
+
+    /**
+     * Parse pending sections of a lazy document
+     *
+     * @param path Path about to be read, null to parse every section
+     */
+    private void materialize(String path) {
+        LazyDocument lazy = document;
+        if (lazy == null) return;
+
+        Collection<String> keys = null;
+        if (path != null) {
+            int separator = path.indexOf('.');
+            String key = separator < 0 ? path : path.substring(0, separator);
+            if (!lazy.isPending(key)) return;
+            keys = Collections.singleton(key);
+        }
+
+        synchronized (writeLock) {
+            lazy = document;
+            if (lazy == null) return;
+            try {
+                // Same content as before, so compiled keys and dirty state are kept
+                config = lazy.parse(this::parse, config, keys);
+            } catch (InvalidConfigurationException e) {
+                throw new IllegalStateException("Can't parse section of \"" + path + "\"", e);
+            }
+            if (lazy.isComplete()) document = null;
+        }
+    }
+
+    /**
+     * Current tree with every section parsed, without loading anything
+     */
+    private Configuration fullTree() {
+        materialize(null);
+        return config;
+    }
+
+    /**
+     * Replace the current tree, readers see either the old or the new one
+     *
+     * @return version of the new tree
+     */
+    protected int publish(Configuration tree) {
+        config = tree;
+        return version.incrementAndGet();
+    }
+
+    // ----------------------------------------
+    // FREEZE
+    // ----------------------------------------
+
+    /**
+     * Read-only copy of the current tree and its defaults, for configurations
+     * which aren't modified once loaded
+     * <p>
+     * Later changes aren't visible in the copy, freeze again after a reload.
+     *
+     * @return frozen copy
+     */
+    public FrozenConfiguration freeze() {
+        FrozenConfiguration frozenDefaults = defaults != null ? defaults.freeze() : null;
+        synchronized (writeLock) {
+            return new FrozenConfiguration(fullTree(), frozenDefaults);
+        }
+    }
+
+    // ----------------------------------------
+    // BINDINGS
+    // ----------------------------------------
+
+    /**
+     * Create an instance of a class and fill its fields annotated with {@link ConfigValue}
+     * <p>
+     * Fields are filled again each time the configuration is loaded. Missing
+     * values keep the value set by the constructor, and a value of the wrong
+     * type makes the load fail, leaving the previous configuration in place.
+     *
+     * @param type Class with a constructor without parameters
+     * @return bound instance
+     * @throws InvalidConfigurationException if the class can't be bound or a value has the wrong type
+     */
+    public <T> T bind(Class<T> type) throws InvalidConfigurationException {
+        Binding<T> binding = Binding.create(type);
+        synchronized (writeLock) {
+            binding.apply(binding.resolve(tree(null)));
+            bindings.add(binding);
+        }
+        return binding.target();
+    }
+
+    /**
+     * Stop filling an instance returned by {@link #bind(Class)}
+     */
+    public void unbind(Object target) {
+        synchronized (writeLock) {
+            for (Binding<?> binding : bindings) {
+                if (binding.target() == target) bindings.remove(binding);
+            }
+        }
+    }
+
+    /**
+     * Values of each binding in a tree, resolved before anything is applied
+     */
+    private List<Map.Entry<Binding<?>, Object[]>> resolveBindings(Configuration tree) throws InvalidConfigurationException {
+        if (bindings.isEmpty()) return Collections.emptyList();
+        List<Map.Entry<Binding<?>, Object[]>> values = new ArrayList<>(bindings.size());
+        for (Binding<?> binding : bindings) {
+            values.add(new AbstractMap.SimpleImmutableEntry<>(binding, binding.resolve(tree)));
+        }
+        return values;
+    }
+
+    private static void applyBindings(List<Map.Entry<Binding<?>, Object[]>> values) {
+        for (Map.Entry<Binding<?>, Object[]> entry : values) {
+            entry.getKey().apply(entry.getValue());
+        }
+    }
+
+    // ----------------------------------------
+    // LISTENERS
+    // ----------------------------------------
+
+    /**
+     * Listen to the changes of a path made by loading the configuration again
+     * <p>
+     * After each load, the value of the path in the new tree is compared to the
+     * previous one, and the listener is only called if the value or anything
+     * below it changed. Changes made with setters are not reported.
+     *
+     * @param path     Path to listen, empty to listen to the whole tree
+     * @param listener Listener called by the thread loading the configuration
+     */
+    public void addListener(String path, ConfigurationListener listener) {
+        if (path == null) throw new IllegalArgumentException("path can't be null");
+        if (listener == null) throw new IllegalArgumentException("listener can't be null");
+        listeners.add(new Subscription(path, listener));
+    }
+
+    /**
+     * Stop calling a listener, for every path it listens
+     */
+    public void removeListener(ConfigurationListener listener) {
+        for (Subscription subscription : listeners) {
+            if (subscription.listener == listener) listeners.remove(subscription);
+        }
+    }
+
+    /**
+     * Tree about to be replaced, complete when it has to be compared
+     */
+    private Configuration previousTree() {
+        if (!listeners.isEmpty()) materialize(null);
+        return config;
+    }
+
+    private void fireListeners(Configuration previous, Configuration current) {
+        for (Subscription subscription : listeners) {
+            Object oldValue = Sections.find(previous, subscription.path);
+            Object newValue = Sections.find(current, subscription.path);
+            if (Sections.equal(oldValue, newValue)) continue;
+
+            try {
+                subscription.listener.changed(subscription.path, oldValue, newValue);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Listener of \"" + subscription.path + "\" failed", e);
+            }
+        }
+    }
+
+    private static final class Subscription {
+
+        private final String path;
+        private final ConfigurationListener listener;
+
+        private Subscription(String path, ConfigurationListener listener) {
+            this.path = path;
+            this.listener = listener;
+        }
+
+    }
+
+    // ----------------------------------------
+    // KEYS
+    // ----------------------------------------
+
+    /**
+     * Compile a path into a key, using the given default value
+     *
+     * @param path Path of the value
+     * @param def  Default value, can't be null
+     * @return key bound to this configuration
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ConfigKey<T> key(String path, T def) {
+        if (def == null) throw new IllegalArgumentException("def can't be null, use key(path, type) instead");
+        return new ConfigKey<>(this, path, (Class<T>) def.getClass(), def, false);
+    }
+
+    /**
+     * Compile a path into a key, using the default configuration as fallback
+     *
+     * @param path Path of the value
+     * @param type Type of the value
+     * @return key bound to this configuration
+     */
+    public <T> ConfigKey<T> key(String path, Class<T> type) {
+        return new ConfigKey<>(this, path, wrap(type), null, true);
+    }
+
+    /**
+     * Version of the tree, incremented on each load or change
+     */
+    protected int version() {
+        return version.get();
+    }
+
+    /**
+     * Invalidate compiled keys
+     */
+    protected void changed() {
+        version.incrementAndGet();
+    }
+
     // ----------------------------------------
     // INTERNAL
     // ----------------------------------------
 
     protected static final String COMMENT_PREFIX = "# ";
 
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Files bigger than this are mapped in memory when enabled in options
+     */
+    protected static final long MAP_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Read and decode a file in a single pass
+     *
+     * @param file File to read
+     * @param map  Whether the file can be mapped in memory
+     * @return decoded content, without byte order mark
+     */
+    protected static CharBuffer readFile(File file, boolean map) throws IOException {
+        return decode(readBytes(file, map));
+    }
+
+    private void read(long bytes) {
+        ConfigurationMetrics metrics = this.metrics;
+        if (metrics != null) metrics.bytesRead(bytes);
+    }
+
+    private static ByteBuffer readBytes(File file, boolean map) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("File too large: " + file);
+
+            ByteBuffer bytes;
+            if (map && size >= MAP_THRESHOLD) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) != -1) ;
+                bytes.flip();
+            }
+
+            return bytes;
+        }
+    }
+
+    /**
+     * Decode the content of a file, without byte order mark
+     */
+    static CharBuffer decode(ByteBuffer bytes) throws IOException {
+        Charset charset = StandardCharsets.UTF_8;
+
+        // Same byte order marks as UnicodeReader
+        if (startsWith(bytes, 0xEF, 0xBB, 0xBF)) {
+            bytes.position(bytes.position() + 3);
+        } else if (startsWith(bytes, 0xFE, 0xFF)) {
+            charset = StandardCharsets.UTF_16BE;
+            bytes.position(bytes.position() + 2);
+        } else if (startsWith(bytes, 0xFF, 0xFE)) {
+            charset = StandardCharsets.UTF_16LE;
+            bytes.position(bytes.position() + 2);
+        }
+
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        // A byte never decodes to more than one char
+        CharBuffer chars = CharBuffer.allocate(bytes.remaining());
+        CoderResult result = decoder.decode(bytes, chars, true);
+        if (result.isError()) result.throwException();
+        result = decoder.flush(chars);
+        if (result.isError()) result.throwException();
+        chars.flip();
+        return chars;
+    }
+
+    private static boolean startsWith(ByteBuffer bytes, int... prefix) {
+        if (bytes.remaining() < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if ((bytes.get(bytes.position() + i) & 0xFF) != prefix[i]) return false;
+        }
+        return true;
+    }
+
     protected String buildHeader() {
+        try (StringWriter writer = new StringWriter()) {
+            writeHeader(writer);
+            return writer.toString();
+        } catch (IOException e) {
+            // Never thrown by StringWriter
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Whether a header would be written on save
+     */
+    protected boolean hasHeader() {
+        FileConfiguration def = getDefaults();
+        return (options().copyHeader() && def != null && def.hasHeader()) || options().header() != null;
+    }
+
+    /**
+     * Write header as comments, line by line
+     *
+     * @param writer Output of the header
+     */
+    protected void writeHeader(Writer writer) throws IOException {
 
         // Get default header if exists
         if (options().copyHeader()) {
             FileConfiguration def = getDefaults();
 
-            if (def != null) {
-                String defaultsHeader = def.buildHeader();
-
-                if (defaultsHeader != null && !defaultsHeader.isEmpty()) {
-                    return defaultsHeader;
-                }
+            if (def != null && def.hasHeader()) {
+                def.writeHeader(writer);
+                return;
             }
         }
 
         // Copy header from current config
         String header = options().header();
         if (header == null) {
-            return "";
+            return;
         }
 
-        StringBuilder builder = new StringBuilder();
-        String[] lines = header.split("\r?\n", -1);
-        boolean startedHeader = false;
-
-        for (int i = lines.length - 1; i >= 0; i--) {
-            builder.insert(0, "\n");
+        // Find last line with content, empty lines after it are kept uncommented
+        int lastContent = -1;
+        int line = 0;
+        for (int start = 0; start <= header.length(); line++) {
+            int end = lineEnd(header, start);
+            if (end > start) lastContent = line;
+            start = nextLine(header, end);
+        }
 
-            if (startedHeader || !lines[i].isEmpty()) {
-                builder.insert(0, lines[i]);
-                builder.insert(0, COMMENT_PREFIX);
-                startedHeader = true;
+        line = 0;
+        for (int start = 0; start <= header.length(); line++) {
+            int end = lineEnd(header, start);
+            if (line <= lastContent) {
+                writer.write(COMMENT_PREFIX);
+                writer.write(header, start, end - start);
             }
+            writer.write('\n');
+            start = nextLine(header, end);
         }
-
-        return builder.toString();
     }
 
     protected String parseHeader(String input) {
-        String[] lines = input.split("\r?\n", -1);
+        return parseHeader((CharSequence) input);
+    }
+
+    /**
+     * Read header from leading comments, stops at the first line with content
+     *
+     * @param input Content of the document
+     * @return header without comment prefix, empty if there is none
+     */
+    protected String parseHeader(CharSequence input) {
         StringBuilder result = new StringBuilder();
         boolean foundHeader = false;
+        int prefixLength = COMMENT_PREFIX.length();
 
-        for (String line : lines) {
-            if (line.startsWith(COMMENT_PREFIX)) {
+        for (int start = 0; start <= input.length(); ) {
+            int end = lineEnd(input, start);
+
+            if (startsWith(input, start, end, COMMENT_PREFIX)) {
 
                 if (result.length() > 0) {
                     result.append("\n");
                 }
 
-                if (line.length() > COMMENT_PREFIX.length()) {
-                    result.append(line.substring(COMMENT_PREFIX.length()));
+                if (end - start > prefixLength) {
+                    result.append(input, start + prefixLength, end);
                 }
 
                 foundHeader = true;
 
-            } else if (line.isEmpty()) {
+            } else if (end == start) {
                 if (foundHeader) {
                     result.append("\n");
                 }
             } else {
                 break;
             }
+
+            start = nextLine(input, end);
         }
 
         return result.toString();
     }
 
-    protected void copyDefaults(Configuration input, Configuration def) {
-
-        // Get keys of current path
-        Collection<String> inputKeys = input.getKeys();
-        Collection<String> defKeys = def.getKeys();
+    /**
+     * End of the line starting at the given index, excluding line break
+     */
+    private static int lineEnd(CharSequence input, int start) {
+        int length = input.length();
+        int end = start;
+        while (end < length && input.charAt(end) != '\n') end++;
+        if (end < length && end > start && input.charAt(end - 1) == '\r') end--;
+        return end;
+    }
 
-        // Looping through default keys
-        for (String key : defKeys) {
-            if (!inputKeys.contains(key)) {
-                // Missing key in user configuration
-                input.set(key, def.get(key));
-            } else {
-                // Get values
-                Object inputValue = input.get(key);
-                Object defValue = def.get(key);
-
-                // Sometimes a Map is returned instead of a Configuration
-                Configuration inputSection = inputValue instanceof Map ? input.getSection(key) : null;
-                Configuration defSection = defValue instanceof Map ? def.getSection(key) : null;
-
-                if (defSection != null) {
-                    // There is a default section
-                    if (inputSection != null) {
-                        // And a user section, so apply default into it
-                        copyDefaults(inputSection, defSection);
-                    } else {
-                        // But no user section, so just copy it
-                        input.set(key, defSection);
-                    }
-                }
+    /**
+     * Start of the line following the given line end
+     */
+    private static int nextLine(CharSequence input, int end) {
+        int length = input.length();
+        if (end < length && input.charAt(end) == '\r') end++;
+        // Past the end when there is no more line break
+        return end + 1;
+    }
 
-                if (inputValue == null) {
-                    // No user value
-                    input.set(key, defValue);
-                } else if (defValue != null) {
-                    // defValue == null means we can have anything, so we skip it
-                    if (defValue instanceof Configuration) {
-                        // There is a default section
-                        if (inputValue instanceof Configuration) {
-                            // And a user section, so apply default into it
-                            copyDefaults((Configuration) inputValue, (Configuration) defValue);
-                        } else {
-                            // But no user section, so just copy it
-                            input.set(key, defValue);
-                        }
-                    } else if (!inputValue.getClass().equals(defValue.getClass())) {
-                        // Values are not the same type
-                        // We get the base class, as for instance Integer ≠ Float but both are Numbers
-                        Class inputClass = getBaseClass(inputValue);
-                        Class defClass = getBaseClass(defValue);
-                        if (inputClass == null || !inputClass.equals(defClass)) {
-                            // Still different types, so override user value
-                            input.set(key, defValue);
-                        }
-                    }
-                }
-            }
+    private static boolean startsWith(CharSequence input, int start, int end, String prefix) {
+        if (end - start < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (input.charAt(start + i) != prefix.charAt(i)) return false;
         }
-
-        reorderKeys(input, def);
+        return true;
     }
 
-    private boolean reorderKeys(Configuration input, Configuration def) {
+    /**
+     * Merge defaults into a section, in a single pass over both sections
+     * <p>
+     * Missing or mistyped values are taken from defaults, keys are ordered
+     * as in defaults and keys only found in the section are kept after them.
+     *
+     * @param input Section to complete
+     * @param def   Default section
+     */
+    protected void copyDefaults(Configuration input, Configuration def) {
 
-        // Get keys of current path
-        Collection<String> inputKeys = input.getKeys();
-        Collection<String> defKeys = def.getKeys();
+        // Work on the values of the sections, without copying keys when possible
+        Map<String, Object> values = Sections.values(input);
+        boolean live = values != null;
+        if (!live) values = Sections.toValues(input);
 
-        // It won't work if we have more default keys
-        if (inputKeys.size() < defKeys.size()) return false;
+        Map<String, Object> defValues = Sections.values(def);
+        if (defValues == null) defValues = Sections.toValues(def);
 
-        // We ensure that input has at least all default keys
-        for (String key : defKeys) if (!inputKeys.contains(key)) return false;
+        boolean changed = false;
+        boolean complete = true;
+        List<String> removed = null;
 
-        // Iterate through both keys
-        Iterator<String> inputIterator = inputKeys.iterator();
-        for (String defKey : defKeys) {
+        for (Map.Entry<String, Object> entry : defValues.entrySet()) {
+            String key = entry.getKey();
+            Object defValue = entry.getValue();
+            if (defValue == null) defValue = def.get(key);
 
-            // Should never happen
-            if (!inputIterator.hasNext()) return false;
+            if (!values.containsKey(key)) {
+                // Missing key in user configuration
+                if (defValue != null) {
+                    values.put(key, defValue);
+                    changed = true;
+                } else {
+                    complete = false;
+                }
+                continue;
+            }
 
-            String inputKey = inputIterator.next();
+            Object inputValue = values.get(key);
+            if (inputValue == null) {
+                // Falls back to the default of the section, as Configuration#get does
+                inputValue = input.get(key);
+                if (inputValue instanceof Configuration) values.put(key, inputValue);
+            }
 
-            // We have different key
-            if (!defKey.equals(inputKey)) {
+            if (defValue instanceof Configuration) {
+                // There is a default section
+                if (inputValue instanceof Configuration) {
+                    // And a user section, so apply default into it
+                    copyDefaults((Configuration) inputValue, (Configuration) defValue);
+                } else {
+                    // But no user section, so just copy it
+                    values.put(key, defValue);
+                    changed = true;
+                }
+            } else if (inputValue == null) {
+                // No user value
+                if (defValue == null) {
+                    // Both sections may be the same, so remove after iterating
+                    if (removed == null) removed = new ArrayList<>();
+                    removed.add(key);
+                    complete = false;
+                } else {
+                    values.put(key, defValue);
+                }
+                changed = true;
+            } else if (defValue != null && !inputValue.getClass().equals(defValue.getClass())) {
+                // Values are not the same type
+                // We get the base class, as for instance Integer ≠ Float but both are Numbers
+                Class inputClass = getBaseClass(inputValue);
+                Class defClass = getBaseClass(defValue);
+                if (inputClass == null || !inputClass.equals(defClass)) {
+                    // Still different types, so override user value
+                    values.put(key, defValue);
+                    changed = true;
+                }
+            }
+        }
 
-                // So we need to reorder
-                Map<String, Object> cache = new HashMap<>();
+        if (removed != null) {
+            for (String key : removed) values.remove(key);
+        }
 
-                // Move user config to cache
-                for (String key : inputKeys) {
-                    cache.put(key, input.get(key));
-                    input.set(key, null);
-                }
+        // It won't work if some default keys are missing
+        if (complete && reorderKeys(input, values, defValues)) {
+            changed = true;
+        }
 
-                // Add in right order
-                for (String key : defKeys) {
-                    input.set(key, cache.remove(key));
-                }
+        if (!live && changed) {
+            Sections.replaceValues(input, values);
+        }
+    }
 
-                // Add remaining user keys
-                for (Map.Entry<String, Object> entry : cache.entrySet()) {
-                    input.set(entry.getKey(), entry.getValue());
-                }
+    /**
+     * Put keys in the order of defaults, followed by keys only found in input
+     *
+     * @return true if keys were reordered
+     */
+    private boolean reorderKeys(Configuration input, Map<String, Object> values, Map<String, Object> defValues) {
 
-                // Stop here, keys are reordered
-                return true;
+        // Iterate through both keys
+        Iterator<String> inputIterator = values.keySet().iterator();
+        boolean ordered = true;
+        for (String defKey : defValues.keySet()) {
+            if (!inputIterator.hasNext() || !defKey.equals(inputIterator.next())) {
+                ordered = false;
+                break;
             }
         }
 
-        // No reorder done
+        if (ordered) return false;
+
+        // Keep user keys in their order
+        List<String> userKeys = new ArrayList<>();
+        for (String key : values.keySet()) {
+            if (!defValues.containsKey(key)) userKeys.add(key);
+        }
+
+        // Move each key at the end, in right order
+        for (String key : defValues.keySet()) {
+            moveLast(input, values, key);
+        }
+        for (String key : userKeys) {
+            moveLast(input, values, key);
+        }
+
         return true;
     }
 
+    private void moveLast(Configuration input, Map<String, Object> values, String key) {
+        Object value = values.remove(key);
+        if (value == null) value = input.getDefault(key);
+        if (value != null) values.put(key, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Class<T> wrap(Class<T> type) {
+        if (type == null || !type.isPrimitive()) return type;
+        if (type == int.class) return (Class<T>) Integer.class;
+        if (type == long.class) return (Class<T>) Long.class;
+        if (type == double.class) return (Class<T>) Double.class;
+        if (type == float.class) return (Class<T>) Float.class;
+        if (type == short.class) return (Class<T>) Short.class;
+        if (type == byte.class) return (Class<T>) Byte.class;
+        if (type == boolean.class) return (Class<T>) Boolean.class;
+        if (type == char.class) return (Class<T>) Character.class;
+        return type;
+    }
+
     private Class getBaseClass(Object object) {
         Class<?>[] classes = {Configuration.class, Boolean.class, Number.class, Character.class, String.class, List.class};
         for (Class<?> clazz : classes) {
@@ -357,152 +1198,235 @@ public class FileConfiguration {
         return null;
     }
 
+    // ----------------------------------------
+    // PRIMITIVE ARRAYS
+    // ----------------------------------------
+
+    // Arrays are built once per tree and shared between calls, they must not be modified
+
+    public int[] getIntArray(String path) {
+        return arrays(path).getIntArray(path);
+    }
+
+    public long[] getLongArray(String path) {
+        return arrays(path).getLongArray(path);
+    }
+
+    public double[] getDoubleArray(String path) {
+        return arrays(path).getDoubleArray(path);
+    }
+
+    public boolean[] getBooleanArray(String path) {
+        return arrays(path).getBooleanArray(path);
+    }
+
+    private ArrayCache arrays(String path) {
+        Configuration tree = tree(path);
+        int version = version();
+
+        ArrayCache cache = arrays;
+        if (cache == null || !cache.isValid(tree, version)) {
+            cache = new ArrayCache(tree, version);
+            arrays = cache;
+        }
+        return cache;
+    }
+
     // ----------------------------------------
     // DELEGATE CONFIGURATION METHODS
     // ----------------------------------------
 
+    // Getters read the last key of the path from its section, as Configuration creates
+    // missing sections while other threads may read the tree. Outside of snapshot mode,
+    // sections are still added by get() and getSection() as Configuration does, since
+    // they may be edited by the caller.
+
+    @SuppressWarnings("unchecked")
     public <T> T get(String path, T def) {
-        return getConfig().get(path, def);
+        if (!options().snapshot()) return read(path, Object.class, true).get(path, def);
+        Object value = read(path, Object.class).get(Sections.key(path), null);
+        return value != null ? (T) value : def;
     }
 
     public boolean contains(String path) {
-        return getConfig().contains(path);
+        return read(path, Object.class).contains(Sections.key(path));
     }
 
     public Object get(String path) {
-        return getConfig().get(path);
+        if (!options().snapshot()) return read(path, Object.class, true).get(path);
+        Configuration section = read(path, Object.class);
+        String key = Sections.key(path);
+        Object value = section.get(key, null);
+        return value != null ? value : section.getDefault(key);
     }
 
     public Object getDefault(String path) {
-        return getConfig().getDefault(path);
+        return Sections.parent(tree(path), path).getDefault(Sections.key(path));
     }
 
-    public void set(String path, Object value) {
-        getConfig().set(path, value instanceof FileConfiguration ? ((FileConfiguration) value).config : value);
+    public void set(final String path, Object value) {
+        final Object object = value instanceof FileConfiguration ? ((FileConfiguration) value).config : value;
+        update(path, tree -> tree.set(path, object));
     }
 
+    /**
+     * Get section of a path
+     * <p>
+     * Edits made directly on the section must be followed by {@link #markDirty()}.
+     */
     public Configuration getSection(String path) {
-        return getConfig().getSection(path);
+        if (!options().snapshot()) return read(path, Configuration.class, true).getSection(path);
+        Configuration section = read(path, Configuration.class);
+        String key = Sections.key(path);
+        Object value = section.get(key, null);
+        if (value != null) return (Configuration) value;
+
+        // Missing sections aren't added to the tree
+        Object def = section.getDefault(key);
+        return def instanceof Configuration ? (Configuration) def : new Configuration();
     }
 
     public Collection<String> getKeys() {
-        return getConfig().getKeys();
+        return tree(null).getKeys();
     }
 
     public byte getByte(String path) {
-        return getConfig().getByte(path);
+        return read(path, Number.class).getByte(Sections.key(path));
     }
 
     public byte getByte(String path, byte def) {
-        return getConfig().getByte(path, def);
+        return read(path, Number.class).getByte(Sections.key(path), def);
     }
 
     public List<Byte> getByteList(String path) {
-        return getConfig().getByteList(path);
+        return read(path, List.class).getByteList(Sections.key(path));
     }
 
     public short getShort(String path) {
-        return getConfig().getShort(path);
+        return read(path, Number.class).getShort(Sections.key(path));
     }
 
     public short getShort(String path, short def) {
-        return getConfig().getShort(path, def);
+        return read(path, Number.class).getShort(Sections.key(path), def);
     }
 
     public List<Short> getShortList(String path) {
-        return getConfig().getShortList(path);
+        return read(path, List.class).getShortList(Sections.key(path));
     }
 
     public int getInt(String path) {
-        return getConfig().getInt(path);
+        return read(path, Number.class).getInt(Sections.key(path));
     }
 
     public int getInt(String path, int def) {
-        return getConfig().getInt(path, def);
+        return read(path, Number.class).getInt(Sections.key(path), def);
     }
 
     public List<Integer> getIntList(String path) {
-        return getConfig().getIntList(path);
+        return read(path, List.class).getIntList(Sections.key(path));
     }
 
     public long getLong(String path) {
-        return getConfig().getLong(path);
+        return read(path, Number.class).getLong(Sections.key(path));
     }
 
     public long getLong(String path, long def) {
-        return getConfig().getLong(path, def);
+        return read(path, Number.class).getLong(Sections.key(path), def);
     }
 
     public List<Long> getLongList(String path) {
-        return getConfig().getLongList(path);
+        return read(path, List.class).getLongList(Sections.key(path));
     }
 
     public float getFloat(String path) {
-        return getConfig().getFloat(path);
+        return read(path, Number.class).getFloat(Sections.key(path));
     }
 
     public float getFloat(String path, float def) {
-        return getConfig().getFloat(path, def);
+        return read(path, Number.class).getFloat(Sections.key(path), def);
     }
 
     public List<Float> getFloatList(String path) {
-        return getConfig().getFloatList(path);
+        return read(path, List.class).getFloatList(Sections.key(path));
     }
 
     public double getDouble(String path) {
-        return getConfig().getDouble(path);
+        return read(path, Number.class).getDouble(Sections.key(path));
     }
 
     public double getDouble(String path, double def) {
-        return getConfig().getDouble(path, def);
+        return read(path, Number.class).getDouble(Sections.key(path), def);
     }
 
     public List<Double> getDoubleList(String path) {
-        return getConfig().getDoubleList(path);
+        return read(path, List.class).getDoubleList(Sections.key(path));
     }
 
     public boolean getBoolean(String path) {
-        return getConfig().getBoolean(path);
+        return read(path, Boolean.class).getBoolean(Sections.key(path));
     }
 
     public boolean getBoolean(String path, boolean def) {
-        return getConfig().getBoolean(path, def);
+        return read(path, Boolean.class).getBoolean(Sections.key(path), def);
     }
 
     public List<Boolean> getBooleanList(String path) {
-        return getConfig().getBooleanList(path);
+        return read(path, List.class).getBooleanList(Sections.key(path));
     }
 
     public char getChar(String path) {
-        return getConfig().getChar(path);
+        return read(path, Character.class).getChar(Sections.key(path));
     }
 
     public char getChar(String path, char def) {
-        return getConfig().getChar(path, def);
+        return read(path, Character.class).getChar(Sections.key(path), def);
     }
 
     public List<Character> getCharList(String path) {
-        return getConfig().getCharList(path);
+        return read(path, List.class).getCharList(Sections.key(path));
     }
 
     public String getString(String path) {
-        return getConfig().getString(path);
+        return read(path, String.class).getString(Sections.key(path));
     }
 
     public String getString(String path, String def) {
-        return getConfig().getString(path, def);
+        return read(path, String.class).getString(Sections.key(path), def);
     }
 
     public List<String> getStringList(String path) {
-        return getConfig().getStringList(path);
+        return read(path, List.class).getStringList(Sections.key(path));
     }
 
     public List<?> getList(String path) {
-        return getConfig().getList(path);
+        return read(path, List.class).getList(Sections.key(path));
     }
 
     public List<?> getList(String path, List<?> def) {
-        return getConfig().getList(path, def);
+        return read(path, List.class).getList(Sections.key(path), def);
+    }
+
+    /**
+     * Section to read the last key of a path from, recording the read when profiling
+     *
+     * @param path Path read
+     * @param type Type returned by the getter, other values fall back to the default value
+     * @see Sections#parent(Configuration, String)
+     */
+    private Configuration read(String path, Class<?> type) {
+        return read(path, type, false);
+    }
+
+    /**
+     * @param whole Whether to give the whole tree, to read the full path from
+     */
+    private Configuration read(String path, Class<?> type, boolean whole) {
+        Configuration tree = tree(path);
+        AccessProfiler profiler = this.profiler;
+        if (profiler != null && profiler.sample()) {
+            profiler.record(path, !type.isInstance(Sections.find(tree, path)));
+        }
+        return whole ? tree : Sections.parent(tree, path);
     }
 
 }
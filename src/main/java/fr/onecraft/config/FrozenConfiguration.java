@@ -0,0 +1,493 @@
+package fr.onecraft.config;
+
+import net.md_5.bungee.config.Configuration;
+
+import java.util.*;
+
+/**
+ * Read-only copy of a tree, indexed by full path
+ * <p>
+ * Entries of the whole tree are stored in flat arrays, children of a section
+ * being contiguous, and every full path is found through a single open
+ * addressing table. Paths aren't kept as strings: a candidate entry is
+ * checked by comparing its keys, which are interned, with the end of the path.
+ * <p>
+ * Getters behave as the ones of {@link Configuration}, values missing from the
+ * tree are taken from defaults. Sections are returned as frozen configurations
+ * sharing the same index, and lists can't be modified.
+ *
+ * @see FileConfiguration#freeze()
+ */
+public final class FrozenConfiguration {
+
+    private static final char SEPARATOR = '.';
+
+    private final Index index;
+    private final FrozenConfiguration defaults;
+
+    // Entry of this section, -1 for the root
+    private final int base;
+
+    private FrozenConfiguration(Index index, int base, FrozenConfiguration defaults) {
+        this.index = index;
+        this.base = base;
+        this.defaults = defaults;
+    }
+
+    /**
+     * Freeze a tree
+     *
+     * @param tree     Tree to copy
+     * @param defaults Frozen defaults of the tree, may be null
+     */
+    FrozenConfiguration(Configuration tree, FrozenConfiguration defaults) {
+        this(new Index(entries(tree)), -1, defaults);
+    }
+
+    /**
+     * Number of entries at any depth, sections included
+     */
+    public int size() {
+        return index.keys.length;
+    }
+
+    // ----------------------------------------
+    // GETTERS
+    // ----------------------------------------
+
+    public FrozenConfiguration getDefaults() {
+        return defaults;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String path, T def) {
+        Object value = index.value(this, index.find(path, base));
+        return value != null ? (T) value : def;
+    }
+
+    public boolean contains(String path) {
+        return get(path, null) != null;
+    }
+
+    public Object get(String path) {
+        return get(path, getDefault(path));
+    }
+
+    public Object getDefault(String path) {
+        return defaults == null ? null : defaults.get(path);
+    }
+
+    /**
+     * Get a section, values other than sections give an empty section
+     */
+    public FrozenConfiguration getSection(String path) {
+        FrozenConfiguration sectionDefaults = defaults == null ? null : defaults.getSection(path);
+        int entry = index.find(path, base);
+        if (entry < 0 || !(index.values[entry] instanceof Section)) {
+            return new FrozenConfiguration(Index.EMPTY, -1, sectionDefaults);
+        }
+        return new FrozenConfiguration(index, entry, sectionDefaults);
+    }
+
+    public Collection<String> getKeys() {
+        return index.keys(base);
+    }
+
+    // ----------------------------------------
+    // TYPED GETTERS
+    // ----------------------------------------
+
+    public byte getByte(String path) {
+        Object def = getDefault(path);
+        return getByte(path, def instanceof Number ? ((Number) def).byteValue() : 0);
+    }
+
+    public byte getByte(String path, byte def) {
+        Object value = get(path, null);
+        return value instanceof Number ? ((Number) value).byteValue() : def;
+    }
+
+    public List<Byte> getByteList(String path) {
+        List<Byte> list = new ArrayList<>();
+        for (Object object : getList(path)) {
+            if (object instanceof Number) list.add(((Number) object).byteValue());
+        }
+        return list;
+    }
+
+    public short getShort(String path) {
+        Object def = getDefault(path);
+        return getShort(path, def instanceof Number ? ((Number) def).shortValue() : 0);
+    }
+
+    public short getShort(String path, short def) {
+        Object value = get(path, null);
+        return value instanceof Number ? ((Number) value).shortValue() : def;
+    }
+
+    public List<Short> getShortList(String path) {
+        List<Short> list = new ArrayList<>();
+        for (Object object : getList(path)) {
+            if (object instanceof Number) list.add(((Number) object).shortValue());
+        }
+        return list;
+    }
+
+    public int getInt(String path) {
+        Object def = getDefault(path);
+        return getInt(path, def instanceof Number ? ((Number) def).intValue() : 0);
+    }
+
+    public int getInt(String path, int def) {
+        Object value = get(path, null);
+        return value instanceof Number ? ((Number) value).intValue() : def;
+    }
+
+    public List<Integer> getIntList(String path) {
+        List<Integer> list = new ArrayList<>();
+        for (Object object : getList(path)) {
+            if (object instanceof Number) list.add(((Number) object).intValue());
+        }
+        return list;
+    }
+
+    public long getLong(String path) {
+        Object def = getDefault(path);
+        return getLong(path, def instanceof Number ? ((Number) def).longValue() : 0);
+    }
+
+    public long getLong(String path, long def) {
+        Object value = get(path, null);
+        return value instanceof Number ? ((Number) value).longValue() : def;
+    }
+
+    public List<Long> getLongList(String path) {
+        List<Long> list = new ArrayList<>();
+        for (Object object : getList(path)) {
+            if (object instanceof Number) list.add(((Number) object).longValue());
+        }
+        return list;
+    }
+
+    public float getFloat(String path) {
+        Object def = getDefault(path);
+        return getFloat(path, def instanceof Number ? ((Number) def).floatValue() : 0);
+    }
+
+    public float getFloat(String path, float def) {
+        Object value = get(path, null);
+        return value instanceof Number ? ((Number) value).floatValue() : def;
+    }
+
+    public List<Float> getFloatList(String path) {
+        List<Float> list = new ArrayList<>();
+        for (Object object : getList(path)) {
+            if (object instanceof Number) list.add(((Number) object).floatValue());
+        }
+        return list;
+    }
+
+    public double getDouble(String path) {
+        Object def = getDefault(path);
+        return getDouble(path, def instanceof Number ? ((Number) def).doubleValue() : 0);
+    }
+
+    public double getDouble(String path, double def) {
+        Object value = get(path, null);
+        return value instanceof Number ? ((Number) value).doubleValue() : def;
+    }
+
+    public List<Double> getDoubleList(String path) {
+        List<Double> list = new ArrayList<>();
+        for (Object object : getList(path)) {
+            if (object instanceof Number) list.add(((Number) object).doubleValue());
+        }
+        return list;
+    }
+
+    public boolean getBoolean(String path) {
+        Object def = getDefault(path);
+        return getBoolean(path, def instanceof Boolean ? (Boolean) def : false);
+    }
+
+    public boolean getBoolean(String path, boolean def) {
+        Object value = get(path, null);
+        return value instanceof Boolean ? (Boolean) value : def;
+    }
+
+    public List<Boolean> getBooleanList(String path) {
+        List<Boolean> list = new ArrayList<>();
+        for (Object object : getList(path)) {
+            if (object instanceof Boolean) list.add((Boolean) object);
+        }
+        return list;
+    }
+
+    public char getChar(String path) {
+        Object def = getDefault(path);
+        return getChar(path, def instanceof Character ? (Character) def : '\u0000');
+    }
+
+    public char getChar(String path, char def) {
+        Object value = get(path, null);
+        return value instanceof Character ? (Character) value : def;
+    }
+
+    public List<Character> getCharList(String path) {
+        List<Character> list = new ArrayList<>();
+        for (Object object : getList(path)) {
+            if (object instanceof Character) list.add((Character) object);
+        }
+        return list;
+    }
+
+    public String getString(String path) {
+        Object def = getDefault(path);
+        return getString(path, def instanceof String ? (String) def : "");
+    }
+
+    public String getString(String path, String def) {
+        Object value = get(path, null);
+        return value instanceof String ? (String) value : def;
+    }
+
+    public List<String> getStringList(String path) {
+        List<String> list = new ArrayList<>();
+        for (Object object : getList(path)) {
+            if (object instanceof String) list.add((String) object);
+        }
+        return list;
+    }
+
+    public List<?> getList(String path) {
+        Object def = getDefault(path);
+        return getList(path, def instanceof List ? (List<?>) def : Collections.emptyList());
+    }
+
+    public List<?> getList(String path, List<?> def) {
+        Object value = get(path, null);
+        return value instanceof List ? (List<?>) value : def;
+    }
+
+    // ----------------------------------------
+    // INDEX
+    // ----------------------------------------
+
+    /**
+     * Children of a section, as a range of entries
+     */
+    private static final class Section {
+
+        private final int first;
+        private final int size;
+
+        private Section(int first, int size) {
+            this.first = first;
+            this.size = size;
+        }
+
+    }
+
+    /**
+     * Entries of a tree, and table of their full paths
+     */
+    private static final class Index {
+
+        private static final Index EMPTY = new Index(Collections.emptyMap());
+
+        // Entries, children of the root first, then children of each section in order
+        private final String[] keys;
+        private final int[] parents;
+        private final int[] hashes;
+        private final Object[] values;
+        private final int rootSize;
+
+        // Entry + 1 for each slot, 0 for a free slot
+        private final int[] table;
+
+        private Index(Map<String, Object> root) {
+            int count = count(root);
+            keys = new String[count];
+            parents = new int[count];
+            hashes = new int[count];
+            values = new Object[count];
+            rootSize = root.size();
+
+            // Entries which can't be reached by a path, as their key or a parent key holds a separator
+            boolean[] hidden = new boolean[count];
+            int indexed = 0;
+
+            Map<?, ?>[] sections = new Map<?, ?>[count];
+            int size = 0;
+            int parent = -1;
+            Map<String, Object> children = root;
+            while (true) {
+                for (Map.Entry<String, Object> entry : children.entrySet()) {
+                    String key = entry.getKey().intern();
+                    keys[size] = key;
+                    parents[size] = parent;
+                    hashes[size] = parent < 0 ? key.hashCode() : hash(hashes[parent], key);
+                    hidden[size] = (parent >= 0 && hidden[parent]) || key.indexOf(SEPARATOR) >= 0;
+                    if (!hidden[size]) indexed++;
+
+                    Object value = entry.getValue();
+                    if (value instanceof Configuration) {
+                        sections[size] = entries((Configuration) value);
+                    } else {
+                        values[size] = freeze(value);
+                    }
+                    size++;
+                }
+
+                // Children of the next section are appended after every entry added so far
+                do {
+                    parent++;
+                } while (parent < count && sections[parent] == null);
+                if (parent >= count) break;
+
+                @SuppressWarnings("unchecked")
+                Map<String, Object> next = (Map<String, Object>) sections[parent];
+                children = next;
+                values[parent] = new Section(size, children.size());
+            }
+
+            // Load factor of at most 1/2
+            int capacity = Integer.highestOneBit(Math.max(indexed, 1) * 2 - 1) << 1;
+            table = new int[capacity];
+            int mask = capacity - 1;
+            for (int entry = 0; entry < count; entry++) {
+                if (hidden[entry]) continue;
+                int slot = spread(hashes[entry]) & mask;
+                while (table[slot] != 0) slot = (slot + 1) & mask;
+                table[slot] = entry + 1;
+            }
+        }
+
+        private static int count(Map<String, Object> section) {
+            int count = section.size();
+            for (Object value : section.values()) {
+                if (value instanceof Configuration) count += count(entries((Configuration) value));
+            }
+            return count;
+        }
+
+        /**
+         * Find the entry of a path
+         *
+         * @param path Path relative to a section
+         * @param base Entry of the section, -1 for the root
+         * @return entry, or -1 if missing
+         */
+        private int find(String path, int base) {
+            int hash = base < 0 ? path.hashCode() : hash(hashes[base], path);
+            int mask = table.length - 1;
+            for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+                int entry = table[slot] - 1;
+                if (entry < 0) return -1;
+                if (hashes[entry] == hash && matches(entry, path, base)) return entry;
+            }
+        }
+
+        /**
+         * Whether the keys from an entry up to a section spell the path
+         */
+        private boolean matches(int entry, String path, int base) {
+            // Direct children, usually read with the interned key itself
+            if (parents[entry] == base) return keys[entry].equals(path);
+
+            int end = path.length();
+            while (true) {
+                String key = keys[entry];
+                int start = end - key.length();
+                if (start < 0 || !path.regionMatches(start, key, 0, key.length())) return false;
+
+                entry = parents[entry];
+                if (entry == base) return start == 0;
+                if (entry < 0 || start == 0 || path.charAt(start - 1) != SEPARATOR) return false;
+                end = start - 1;
+            }
+        }
+
+        private Object value(FrozenConfiguration section, int entry) {
+            if (entry < 0) return null;
+            Object value = values[entry];
+            if (value instanceof Section) {
+                FrozenConfiguration defaults = section.defaults;
+                if (defaults != null) defaults = defaults.getSection(relativePath(entry, section.base));
+                return new FrozenConfiguration(this, entry, defaults);
+            }
+            return value;
+        }
+
+        private String relativePath(int entry, int base) {
+            String path = keys[entry];
+            for (int parent = parents[entry]; parent != base; parent = parents[parent]) {
+                path = keys[parent] + SEPARATOR + path;
+            }
+            return path;
+        }
+
+        private Collection<String> keys(int base) {
+            int first = 0;
+            int size = rootSize;
+            if (base >= 0) {
+                Section section = (Section) values[base];
+                first = section.first;
+                size = section.size;
+            }
+            return Collections.unmodifiableList(Arrays.asList(keys).subList(first, first + size));
+        }
+
+        /**
+         * Hash of a full path, the same as {@link String#hashCode()}
+         *
+         * @param parent Hash of the path of the parent section
+         * @param key    Path relative to the parent section
+         */
+        private static int hash(int parent, String key) {
+            int hash = 31 * parent + SEPARATOR;
+            for (int i = 0; i < key.length(); i++) {
+                hash = 31 * hash + key.charAt(i);
+            }
+            return hash;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+    }
+
+    /**
+     * Values of a section, in order
+     */
+    private static Map<String, Object> entries(Configuration section) {
+        Map<String, Object> values = Sections.values(section);
+        return values != null ? values : Sections.toValues(section);
+    }
+
+    /**
+     * Copy of a value which can't be modified
+     */
+    private static Object freeze(Object value) {
+        if (value instanceof Configuration) {
+            value = Sections.toMap((Configuration) value);
+        }
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            List<Object> copy = new ArrayList<>(list.size());
+            for (Object element : list) {
+                copy.add(freeze(element));
+            }
+            return Collections.unmodifiableList(copy);
+        } else if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), freeze(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(copy);
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,223 @@
+package fr.onecraft.config;
+
+import fr.onecraft.config.exception.InvalidConfigurationException;
+import net.md_5.bungee.config.Configuration;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.Event;
+
+import java.nio.CharBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Document indexed by top level keys, each section being parsed on first access
+ * <p>
+ * Only documents made of a plain block mapping are indexed: anchors, aliases,
+ * tags, directives, several documents or unusual keys at top level make
+ * {@link #scan} give up, so the document is parsed at once as usual.
+ * <p>
+ * The syntax of the whole document is checked when it's indexed, so errors
+ * are reported by the load rather than when a section is read.
+ */
+final class LazyDocument {
+
+    private static final Set<String> RESERVED = new HashSet<>(Arrays.asList(
+            "y", "n", "yes", "no", "on", "off", "true", "false", "null"
+    ));
+
+    private final CharBuffer contents;
+    private final Configuration defaults;
+
+    // Text range of each key, in document order
+    private final Map<String, int[]> ranges;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private LazyDocument(CharBuffer contents, Configuration defaults, Map<String, int[]> ranges) {
+        this.contents = contents.slice();
+        this.defaults = defaults;
+        this.ranges = ranges;
+        this.pending.addAll(ranges.keySet());
+    }
+
+    /**
+     * Index top level keys of a document
+     *
+     * @param contents Content of the document
+     * @param defaults Default tree, may be null
+     * @return indexed document, or null if it must be parsed at once
+     * @throws InvalidConfigurationException if the document is invalid
+     */
+    static LazyDocument scan(CharBuffer contents, Configuration defaults) throws InvalidConfigurationException {
+        Map<String, int[]> ranges = new LinkedHashMap<>();
+        int length = contents.length();
+        int[] current = null;
+
+        // Indexes are relative to the position of the buffer
+        for (int start = 0; start < length; ) {
+            int end = start;
+            while (end < length && contents.charAt(end) != '\n') end++;
+
+            if (end > start) {
+                char c = contents.charAt(start);
+
+                if (c == '#' || c == '\r') {
+                    // Comment or empty line
+                } else if (c == ' ' || c == '\t' || isEntry(contents, start, end)) {
+                    // Content of the current key, aliases may refer to another key
+                    if (current == null || hasProperty(contents, start, end)) return null;
+                } else {
+                    String key = readKey(contents, start, end);
+                    if (key == null || ranges.containsKey(key)) return null;
+                    if (hasProperty(contents, start + key.length() + 1, end)) return null;
+
+                    if (current != null) current[1] = start;
+                    current = new int[]{start, length};
+                    ranges.put(key, current);
+                }
+            }
+
+            start = end + 1;
+        }
+
+        validate(contents);
+        return new LazyDocument(contents, defaults, ranges);
+    }
+
+    /**
+     * Check the syntax of a document, without building its values
+     */
+    private static void validate(CharBuffer contents) throws InvalidConfigurationException {
+        try {
+            for (Event ignored : new Yaml().parse(new CharBufferReader(contents.duplicate()))) ;
+        } catch (YAMLException e) {
+            throw new InvalidConfigurationException(e);
+        }
+    }
+
+    /**
+     * Key of a top level line, null if it's not a plain key
+     */
+    private static String readKey(CharSequence input, int start, int end) {
+        int colon = start;
+        while (colon < end && input.charAt(colon) != ':') {
+            char c = input.charAt(colon);
+            boolean valid = Character.isLetter(c) || c == '_'
+                    || (colon > start && (Character.isDigit(c) || c == '-' || c == ' '));
+            if (!valid) return null;
+            colon++;
+        }
+
+        // Key must be followed by a space or the end of the line
+        if (colon == start || colon == end) return null;
+        if (colon + 1 < end && !Character.isWhitespace(input.charAt(colon + 1))) return null;
+
+        String key = input.subSequence(start, colon).toString();
+        if (!key.equals(key.trim()) || RESERVED.contains(key.toLowerCase(Locale.ROOT))) return null;
+        return key;
+    }
+
+    /**
+     * Whether a line is a list entry, lists may be at the same level as their key
+     */
+    private static boolean isEntry(CharSequence input, int start, int end) {
+        if (input.charAt(start) != '-') return false;
+        return start + 1 == end || Character.isWhitespace(input.charAt(start + 1));
+    }
+
+    /**
+     * Whether a line holds an anchor, an alias or a tag, which may fail to build
+     */
+    private static boolean hasProperty(CharSequence input, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == '&' || c == '*' || c == '!') {
+                // Indicators only count at the start of a value
+                char previous = i > start ? input.charAt(i - 1) : ' ';
+                if (previous == ' ' || previous == '\t' || previous == '-' || previous == ':') return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the section of a key still has to be parsed
+     */
+    boolean isPending(String key) {
+        return pending.contains(key);
+    }
+
+    boolean isComplete() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Tree before any section is parsed
+     */
+    Configuration tree() {
+        return new Configuration(defaults);
+    }
+
+    /**
+     * Parse sections into a new tree
+     * <p>
+     * Values of the current tree are shared with the new one, sections
+     * are kept in document order and keys added since loading come last.
+     *
+     * @param parser  Parser of sections
+     * @param current Current tree
+     * @param keys    Keys of the sections to parse, null to parse every pending section
+     * @return new tree with the parsed sections
+     */
+    Configuration parse(ConfigurationParser parser, Configuration current, Collection<String> keys) throws InvalidConfigurationException {
+
+        // Pending sections are independent, so they're parsed as a single document
+        StringBuilder text = new StringBuilder();
+        Set<String> parsed = new HashSet<>();
+        for (Map.Entry<String, int[]> entry : ranges.entrySet()) {
+            String key = entry.getKey();
+            if (!pending.contains(key) || (keys != null && !keys.contains(key))) continue;
+
+            int[] range = entry.getValue();
+            text.append(contents, range[0], range[1]);
+            if (text.length() > 0 && text.charAt(text.length() - 1) != '\n') text.append('\n');
+            parsed.add(key);
+        }
+
+        if (parsed.isEmpty()) return current;
+
+        Configuration sections = parser.parse(CharBuffer.wrap(text), defaults);
+
+        Map<String, Object> parsedValues = values(sections);
+        Map<String, Object> currentValues = values(current);
+
+        Configuration tree = new Configuration(defaults);
+        Map<String, Object> target = Sections.values(tree);
+
+        for (String key : ranges.keySet()) {
+            Map<String, Object> source = parsed.contains(key) ? parsedValues : currentValues;
+            if (source.containsKey(key)) put(tree, target, key, source.get(key));
+        }
+        for (Map.Entry<String, Object> entry : currentValues.entrySet()) {
+            if (!ranges.containsKey(entry.getKey())) put(tree, target, entry.getKey(), entry.getValue());
+        }
+
+        pending.removeAll(parsed);
+        return tree;
+    }
+
+    private static Map<String, Object> values(Configuration section) {
+        Map<String, Object> values = Sections.values(section);
+        return values != null ? values : Sections.toValues(section);
+    }
+
+    private static void put(Configuration tree, Map<String, Object> target, String key, Object value) {
+        if (target != null) {
+            // Keeps empty keys, which set() would remove
+            target.put(key, value);
+        } else {
+            tree.set(key, value);
+        }
+    }
+
+}
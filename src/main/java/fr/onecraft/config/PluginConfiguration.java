@@ -1,13 +1,28 @@
 package fr.onecraft.config;
 
 import fr.onecraft.config.exception.ConfigurationException;
+import fr.onecraft.config.exception.IOConfigurationException;
+import fr.onecraft.config.exception.InvalidConfigurationException;
 import net.md_5.bungee.api.plugin.Plugin;
 import net.md_5.bungee.config.Configuration;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.*;
 import java.util.logging.Level;
 
 /**
@@ -15,11 +30,24 @@ import java.util.logging.Level;
  */
 public class PluginConfiguration extends FileConfiguration {
 
+    // Parsed resources never change while the plugin runs
+    private static final Map<Plugin, Map<String, FileConfiguration>> DEFAULTS = new WeakHashMap<>();
+
     protected final Plugin plugin;
     protected final String configPath;
     protected final File configFile;
 
-    private boolean loaded = false;
+    private volatile boolean loaded = false;
+    private Executor executor = ForkJoinPool.commonPool();
+
+    private boolean autoReload = false;
+    private ObjectName statsName = null;
+    private volatile byte[] savedSignature = null;
+
+    private final Object saveLock = new Object();
+    private long saveDelay = 1000;
+    private CompletableFuture<Boolean> pendingSave = null;
+    private ScheduledFuture<?> pendingTask = null;
 
     public PluginConfiguration(Plugin plugin, String configPath) {
 
@@ -60,35 +88,139 @@ public class PluginConfiguration extends FileConfiguration {
      * Reload config from file
      */
     public boolean reload() {
+        try {
+            reloadOrThrow();
+            return true;
+        } catch (ConfigurationException e) {
+            plugin.getLogger().log(Level.SEVERE, "Can't load config \"" + configPath + "\" !", e);
+            return false;
+        }
+    }
+
+    /**
+     * Reload config from file, leaving errors to the caller
+     *
+     * @throws ConfigurationException if the file can't be read or parsed, the current config is then kept
+     */
+    public void reloadOrThrow() throws ConfigurationException {
+        try {
+            apply(read());
+        } catch (IOException e) {
+            throw new IOConfigurationException(e);
+        }
+    }
+
+    /**
+     * Reload config from file using the executor of this configuration
+     *
+     * @see #reloadAsync(Executor)
+     */
+    public CompletableFuture<Boolean> reloadAsync() {
+        return reloadAsync(executor);
+    }
+
+    /**
+     * Reload config from file in background
+     * <p>
+     * The current config is only replaced if the new one is parsed
+     * successfully, otherwise it's kept as is.
+     *
+     * @param executor Executor used to read and parse the file
+     * @return future completed with true if reloaded, false if an error occurred
+     */
+    public CompletableFuture<Boolean> reloadAsync(Executor executor) {
+        return CompletableFuture.supplyAsync(this::reload, executor);
+    }
+
+    /**
+     * Set executor used by {@link #reloadAsync()}
+     */
+    public void setExecutor(Executor executor) {
+        if (executor == null) throw new IllegalArgumentException("executor can't be null");
+        this.executor = executor;
+    }
+
+    /**
+     * Read defaults and file into a new configuration, without touching the current one
+     */
+    protected FileConfiguration read() throws IOException, ConfigurationException {
+
+        FileConfiguration defaults = readDefaults();
 
-        try (InputStream is = plugin.getResourceAsStream(configPath)) {
-            FileConfiguration defaults = null;
-            if (is != null) {
-                defaults = new FileConfiguration();
-                defaults.load(is);
-            } else {
-                plugin.getLogger().severe("Can't find resource \"" + configPath + "\" from plugin ! Is it packed in the JAR ?");
+        FileConfiguration loaded = new FileConfiguration();
+        loaded.options().lazy(options().lazy());
+        loaded.options().binaryCache(options().binaryCache());
+        loaded.options().preserveComments(options().preserveComments());
+        loaded.setMetrics(getMetrics());
+        loaded.setParser(getParser());
+        if (!configFile.exists()) {
+            loaded.load("{}\n", defaults);
+        } else {
+            loaded.load(configFile, defaults);
+        }
+        return loaded;
+    }
+
+    /**
+     * Get defaults from plugin resource, parsed only once per plugin and path
+     *
+     * @return a private copy of the defaults, or null if the resource is missing
+     */
+    protected FileConfiguration readDefaults() throws IOException, ConfigurationException {
+
+        FileConfiguration cached;
+        synchronized (DEFAULTS) {
+            Map<String, FileConfiguration> resources = DEFAULTS.get(plugin);
+            cached = resources != null ? resources.get(configPath) : null;
+        }
+
+        if (cached == null) {
+            try (InputStream is = plugin.getResourceAsStream(configPath)) {
+                if (is == null) {
+                    plugin.getLogger().severe("Can't find resource \"" + configPath + "\" from plugin ! Is it packed in the JAR ?");
+                    return null;
+                }
+                cached = new FileConfiguration();
+                cached.load(is);
             }
 
-            if (!configFile.exists()) {
-                load("{}\n", defaults);
-            } else {
-                load(configFile, defaults);
+            synchronized (DEFAULTS) {
+                Map<String, FileConfiguration> resources = DEFAULTS.get(plugin);
+                if (resources == null) {
+                    resources = new HashMap<>();
+                    DEFAULTS.put(plugin, resources);
+                }
+                resources.put(configPath, cached);
             }
-            return true;
-        } catch (IOException | ConfigurationException e) {
-            plugin.getLogger().log(Level.SEVERE, "Can't load config \"" + configPath + "\" !", e);
-            return false;
         }
+
+        // Reading a missing path from a tree creates its sections in the defaults, and
+        // Configuration is final so that can't be prevented. Shared defaults would keep
+        // them across reloads and merge them into the file, each load gets its own copy
+        FileConfiguration defaults = new FileConfiguration();
+        defaults.options().header(cached.options().header());
+        defaults.publish(Sections.copy(cached.config, null));
+        return defaults;
+    }
+
+    private void apply(FileConfiguration configuration) throws InvalidConfigurationException {
+        replace(configuration);
+        loaded = true;
     }
 
     /**
-     * Save config to file
+     * Save config to file, nothing is written if it didn't change
      */
-    public boolean save() {
+    public synchronized boolean save() {
         load();
+        if (!isDirty() && configFile.exists()) {
+            return true;
+        }
         try {
-            save(configFile);
+            byte[] written = write(configFile);
+
+            // Only the watcher needs to recognize saved content
+            savedSignature = autoReload ? digest(written) : null;
             return true;
         } catch (ConfigurationException e) {
             plugin.getLogger().log(Level.SEVERE, "Could not save config to " + configPath, e);
@@ -96,10 +228,195 @@ public class PluginConfiguration extends FileConfiguration {
         }
     }
 
+    /**
+     * Save config to file in background
+     * <p>
+     * Saves requested within the save delay are merged into a single write.
+     * Call {@link #flush()} before the plugin is disabled to write pending changes.
+     *
+     * @return future completed with the result of the save
+     */
+    public CompletableFuture<Boolean> saveAsync() {
+        synchronized (saveLock) {
+            if (pendingSave == null) {
+                pendingSave = new CompletableFuture<>();
+                pendingTask = WriteBehind.SCHEDULER.schedule(this::writeBehind, saveDelay, TimeUnit.MILLISECONDS);
+            }
+            return pendingSave;
+        }
+    }
+
+    /**
+     * Write pending changes now
+     *
+     * @return true if there was nothing to write or the save succeeded
+     */
+    public boolean flush() {
+        CompletableFuture<Boolean> future = null;
+        synchronized (saveLock) {
+            if (pendingSave != null && pendingTask.cancel(false)) {
+                future = pendingSave;
+                pendingSave = null;
+                pendingTask = null;
+            }
+        }
+
+        // A background save may have started before the last changes,
+        // saving again waits for it and writes whatever it missed
+        boolean result = save();
+        if (future != null) future.complete(result);
+        return result;
+    }
+
+    /**
+     * Set how long saveAsync() waits for other saves before writing
+     */
+    public void setSaveDelay(long delay, TimeUnit unit) {
+        if (delay < 0) throw new IllegalArgumentException("delay can't be negative");
+        synchronized (saveLock) {
+            this.saveDelay = unit.toMillis(delay);
+        }
+    }
+
+    private void writeBehind() {
+        CompletableFuture<Boolean> future;
+        synchronized (saveLock) {
+            future = pendingSave;
+            pendingSave = null;
+            pendingTask = null;
+        }
+        if (future != null) {
+            try {
+                future.complete(save());
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Reload config when its file is modified
+     * <p>
+     * Changes are detected by a watcher shared by all configurations,
+     * saves made by this configuration are ignored.
+     *
+     * @param enabled Whether to watch the file
+     * @return true if the file is watched, false if an error occurred
+     */
+    public synchronized boolean setAutoReload(boolean enabled) {
+        if (enabled == autoReload) return true;
+
+        if (enabled) {
+            try {
+                ConfigurationWatcher.get().register(this);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Can't watch config \"" + configPath + "\" !", e);
+                return false;
+            }
+        } else {
+            ConfigurationWatcher.get().unregister(this);
+            savedSignature = null;
+        }
+
+        autoReload = enabled;
+        return true;
+    }
+
+    public synchronized boolean isAutoReload() {
+        return autoReload;
+    }
+
+    /**
+     * Whether the file still has the content written by the last save
+     */
+    boolean isSavedFile() {
+        byte[] saved = savedSignature;
+        return saved != null && Arrays.equals(saved, signature());
+    }
+
+    /**
+     * Hash of the file content, timestamps and sizes can't tell
+     * an edit made within the same second with the same length
+     *
+     * @return hash, or null if the file can't be read
+     */
+    private byte[] signature() {
+        try {
+            return digest(Files.readAllBytes(configFile.toPath()));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static byte[] digest(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            // Required on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Collect metrics of this configuration and expose them as an MBean
+     * named {@code fr.onecraft.config:type=Configuration,plugin=<name>,path=<path>}
+     *
+     * @return collected metrics, or null if the MBean can't be registered
+     */
+    public synchronized ConfigurationStats enableStats() {
+        if (statsName != null && getMetrics() instanceof ConfigurationStats) {
+            return (ConfigurationStats) getMetrics();
+        }
+
+        ConfigurationStats stats = new ConfigurationStats(this);
+        try {
+            Hashtable<String, String> properties = new Hashtable<>();
+            properties.put("type", "Configuration");
+            properties.put("plugin", ObjectName.quote(plugin.getDescription().getName()));
+            properties.put("path", ObjectName.quote(configPath));
+            ObjectName name = new ObjectName("fr.onecraft.config", properties);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(stats, name);
+            statsName = name;
+        } catch (JMException e) {
+            plugin.getLogger().log(Level.WARNING, "Can't register stats of config \"" + configPath + "\" !", e);
+            return null;
+        }
+
+        setMetrics(stats);
+        return stats;
+    }
+
+    /**
+     * Stop collecting metrics and unregister the MBean
+     */
+    public synchronized void disableStats() {
+        setMetrics(null);
+        if (statsName == null) return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(statsName);
+        } catch (JMException ignored) {
+        }
+        statsName = null;
+    }
+
     @Override
-    public Configuration getConfig() {
+    protected Configuration tree(String path) {
         load();
-        return super.getConfig();
+        return super.tree(path);
+    }
+
+    private static final class WriteBehind {
+
+        private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "BungeeYAML Saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+
     }
 
     private void load() {
@@ -0,0 +1,315 @@
+package fr.onecraft.config;
+
+import net.md_5.bungee.config.Configuration;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+ * Helpers on configuration trees
+ */
+final class Sections {
+
+    // Values and defaults of a section, not exposed by Configuration
+    private static final MethodHandle VALUES = findField("self", Map.class);
+    private static final MethodHandle DEFAULTS = findField("defaults", Configuration.class);
+
+    private Sections() {}
+
+    private static MethodHandle findField(String name, Class<?> type) {
+        try {
+            Field field = Configuration.class.getDeclaredField(name);
+            if (!type.isAssignableFrom(field.getType())) return null;
+            field.setAccessible(true);
+            return MethodHandles.lookup().unreflectGetter(field);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Live values of a section, changes are visible in the section
+     *
+     * @return values, or null if they can't be reached on this version of Configuration
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> values(Configuration section) {
+        if (VALUES == null) return null;
+        try {
+            return (Map<String, Object>) VALUES.invoke(section);
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * Defaults of a section
+     *
+     * @return defaults, or null if there are none or they can't be reached
+     */
+    static Configuration defaults(Configuration section) {
+        if (DEFAULTS == null) return null;
+        try {
+            return (Configuration) DEFAULTS.invoke(section);
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * Copy of the values of a section, in order
+     */
+    static Map<String, Object> toValues(Configuration section) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String key : section.getKeys()) {
+            values.put(key, section.get(key, null));
+        }
+        return values;
+    }
+
+    /**
+     * Replace all values of a section, keeping the order of the given map
+     */
+    static void replaceValues(Configuration section, Map<String, Object> values) {
+        for (String key : section.getKeys()) {
+            section.set(key, null);
+        }
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            section.set(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Deep copy of a tree, sections and lists are copied, other values are shared
+     *
+     * @param input    Tree to copy
+     * @param defaults Defaults of the new tree, may be null
+     * @return a new tree with the same content
+     */
+    static Configuration copy(Configuration input, Configuration defaults) {
+        Map<String, Object> values = values(input);
+        if (values == null) {
+            Configuration output = new Configuration(defaults);
+            for (String key : input.getKeys()) {
+                // Maps are turned into sections by Configuration, along with their defaults
+                output.set(key, copyValue(input.get(key, null)));
+            }
+            return output;
+        }
+
+        // Entries are copied as they are, so keys holding dots aren't split into sections
+        Configuration output = new Configuration(defaults);
+        Map<String, Object> target = values(output);
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Configuration) {
+                value = copy((Configuration) value, section(defaults, entry.getKey()));
+            } else if (value instanceof Map) {
+                value = fromMap((Map<?, ?>) value, section(defaults, entry.getKey()));
+            } else {
+                value = copyValue(value);
+            }
+            target.put(entry.getKey(), value);
+        }
+        return output;
+    }
+
+    /**
+     * Copy of the sections leading to a path, everything else is shared with the input
+     * <p>
+     * Setting the path in the copy leaves the input untouched, as long as
+     * the values shared by both trees are only replaced, never modified.
+     *
+     * @param input    Tree to copy
+     * @param path     Path about to be set
+     * @param defaults Defaults of the new tree, may be null
+     * @return a new tree with the same content, or a deep copy if sections can't be reached
+     */
+    static Configuration copyPath(Configuration input, String path, Configuration defaults) {
+        Map<String, Object> values = values(input);
+        if (values == null) return copy(input, defaults);
+
+        Configuration output = new Configuration(defaults);
+        Map<String, Object> target = values(output);
+        target.putAll(values);
+
+        int start = 0;
+        int end;
+        while ((end = path.indexOf('.', start)) >= 0) {
+            String key = path.substring(start, end);
+            Object value = target.get(key);
+            if (!(value instanceof Configuration)) break;
+
+            // Sections of the path are copied, set() then only changes the copies
+            Configuration section = (Configuration) value;
+            Configuration copy = new Configuration(defaults(section));
+            Map<String, Object> sectionValues = values(section);
+            Map<String, Object> copyValues = values(copy);
+            copyValues.putAll(sectionValues);
+            target.put(key, copy);
+
+            target = copyValues;
+            start = end + 1;
+        }
+        return output;
+    }
+
+    /**
+     * Section holding the last key of a path, without creating missing sections as Configuration does
+     * <p>
+     * Reading the last key from it gives the same value as reading the path
+     * from the tree. A missing section is given as a new section, outside of
+     * the tree, with the defaults of its path.
+     */
+    static Configuration parent(Configuration tree, String path) {
+        int last = path.lastIndexOf('.');
+        Configuration section = tree;
+        int start = 0;
+        while (start <= last) {
+            int end = path.indexOf('.', start);
+            Object value = section.get(path.substring(start, end), null);
+            if (!(value instanceof Configuration)) {
+                Configuration defaults = defaults(tree);
+                Object sectionDefaults = defaults != null ? find(defaults, path.substring(0, last)) : null;
+                return new Configuration(sectionDefaults instanceof Configuration ? (Configuration) sectionDefaults : null);
+            }
+            section = (Configuration) value;
+            start = end + 1;
+        }
+        return section;
+    }
+
+    /**
+     * Last key of a path, read from the section given by {@link #parent(Configuration, String)}
+     */
+    static String key(String path) {
+        int last = path.lastIndexOf('.');
+        return last < 0 ? path : path.substring(last + 1);
+    }
+
+    private static Configuration section(Configuration tree, String key) {
+        if (tree == null) return null;
+        Object value = tree.get(key, null);
+        return value instanceof Configuration ? (Configuration) value : null;
+    }
+
+    /**
+     * Tree from nested maps, as built by the parser
+     *
+     * @param map      Values of the tree, maps are turned into sections
+     * @param defaults Defaults of the new tree, may be null
+     * @return a new tree holding the given values
+     */
+    static Configuration fromMap(Map<?, ?> map, Configuration defaults) {
+        Configuration output = new Configuration(defaults);
+        Map<String, Object> values = values(output);
+
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            String key = entry.getKey() == null ? "null" : entry.getKey().toString();
+            Object value = entry.getValue();
+            if (value instanceof Map) {
+                value = fromMap((Map<?, ?>) value, defaults == null ? null : defaults.getSection(key));
+            }
+
+            if (values != null) {
+                // Keeps keys with dots and empty keys as they are
+                values.put(key, value);
+            } else {
+                output.set(key, value);
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Value of a path, without creating missing sections as Configuration does
+     *
+     * @return value, or null if missing
+     */
+    static Object find(Configuration tree, String path) {
+        if (path.isEmpty()) return tree;
+
+        Object value = tree;
+        int start = 0;
+        while (start <= path.length()) {
+            if (!(value instanceof Configuration)) return null;
+            int end = path.indexOf('.', start);
+            if (end < 0) end = path.length();
+            // Single keys are read without touching parent sections
+            value = ((Configuration) value).get(path.substring(start, end), null);
+            start = end + 1;
+        }
+        return value;
+    }
+
+    /**
+     * Whether two values hold the same content, regardless of key order
+     */
+    static boolean equal(Object a, Object b) {
+        if (a == b) return true;
+        if (a == null || b == null) return false;
+
+        if (a instanceof Configuration && b instanceof Configuration) {
+            return equalMaps(readValues((Configuration) a), readValues((Configuration) b));
+        } else if (a instanceof Map && b instanceof Map) {
+            return equalMaps((Map<?, ?>) a, (Map<?, ?>) b);
+        } else if (a instanceof List && b instanceof List) {
+            List<?> first = (List<?>) a;
+            List<?> second = (List<?>) b;
+            if (first.size() != second.size()) return false;
+            Iterator<?> iterator = second.iterator();
+            for (Object element : first) {
+                if (!equal(element, iterator.next())) return false;
+            }
+            return true;
+        }
+        return a.equals(b);
+    }
+
+    private static boolean equalMaps(Map<?, ?> a, Map<?, ?> b) {
+        if (a.size() != b.size()) return false;
+        for (Map.Entry<?, ?> entry : a.entrySet()) {
+            if (!b.containsKey(entry.getKey()) || !equal(entry.getValue(), b.get(entry.getKey()))) return false;
+        }
+        return true;
+    }
+
+    private static Map<String, Object> readValues(Configuration section) {
+        Map<String, Object> values = values(section);
+        return values != null ? values : toValues(section);
+    }
+
+    /**
+     * Tree as nested maps and lists
+     */
+    static Map<String, Object> toMap(Configuration input) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (String key : input.getKeys()) {
+            map.put(key, copyValue(input.get(key, null)));
+        }
+        return map;
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof Configuration) {
+            return toMap((Configuration) value);
+        } else if (value instanceof Map) {
+            Map<Object, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(entry.getKey(), copyValue(entry.getValue()));
+            }
+            return map;
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            List<Object> copy = new ArrayList<>(list.size());
+            for (Object element : list) {
+                copy.add(copyValue(element));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+}
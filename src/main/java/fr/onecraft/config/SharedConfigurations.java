@@ -0,0 +1,174 @@
+package fr.onecraft.config;
+
+import fr.onecraft.config.exception.ConfigurationException;
+import fr.onecraft.config.exception.IOConfigurationException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Frozen configurations shared by every plugin of the proxy
+ * <p>
+ * Files are identified by canonical path and content hash: a file is only
+ * parsed once as long as it doesn't change, and every plugin acquiring it gets
+ * the same snapshot. Snapshots are counted, and dropped once each acquire has
+ * been released. A snapshot of a file which changed since stays valid for its
+ * holders, the next acquire parses the new content.
+ * <p>
+ * Shared files are read without defaults, as plugins may have different ones.
+ * <p>
+ * The registry is static, so it's only shared by plugins using the same copy of
+ * this class: the library must be loaded once by the proxy (e.g. as a plugin of
+ * its own), not shaded into each plugin, otherwise every plugin has its own.
+ */
+public final class SharedConfigurations {
+
+    private static final SharedConfigurations INSTANCE = new SharedConfigurations();
+    private static final ConfigurationParser PARSER = new SimpleYamlParser();
+
+    // Latest snapshot of each file, and every acquired snapshot
+    private final Map<Path, Snapshot> files = new HashMap<>();
+    private final Map<FrozenConfiguration, Snapshot> acquired = new IdentityHashMap<>();
+
+    private SharedConfigurations() {}
+
+    public static SharedConfigurations get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the snapshot of a file, parsing it if it's not shared yet or if it changed
+     * <p>
+     * Each acquire must be followed by a {@link #release(FrozenConfiguration)}.
+     *
+     * @param file File to read
+     * @return snapshot of the file, shared with other holders
+     * @throws ConfigurationException if the file can't be read or parsed
+     */
+    public FrozenConfiguration acquire(File file) throws ConfigurationException {
+        if (file == null) throw new IllegalArgumentException("file can't be null");
+
+        Path path;
+        byte[] bytes;
+        try {
+            path = file.toPath().toRealPath();
+            bytes = Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new IOConfigurationException(e);
+        }
+        byte[] hash = hash(bytes);
+
+        Snapshot snapshot;
+        boolean parse = false;
+        synchronized (this) {
+            snapshot = files.get(path);
+            if (snapshot == null || !Arrays.equals(snapshot.hash, hash)) {
+                snapshot = new Snapshot(path, hash);
+                files.put(path, snapshot);
+                parse = true;
+            }
+            snapshot.references++;
+        }
+
+        // Parsed outside of the lock, other acquires of the same content wait for it
+        if (parse) parse(snapshot, bytes);
+
+        try {
+            return snapshot.frozen.join();
+        } catch (CompletionException e) {
+            synchronized (this) {
+                snapshot.references--;
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof ConfigurationException) throw (ConfigurationException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Give back a snapshot, which is dropped once no one holds it
+     *
+     * @param configuration Snapshot given by {@link #acquire(File)}
+     */
+    public synchronized void release(FrozenConfiguration configuration) {
+        Snapshot snapshot = acquired.get(configuration);
+        if (snapshot == null) throw new IllegalArgumentException("configuration isn't acquired");
+
+        if (--snapshot.references > 0) return;
+        acquired.remove(configuration);
+        files.remove(snapshot.path, snapshot);
+    }
+
+    /**
+     * Number of snapshots currently held
+     */
+    public synchronized int size() {
+        return acquired.size();
+    }
+
+    private void parse(Snapshot snapshot, byte[] bytes) {
+        try {
+            FileConfiguration configuration = new FileConfiguration();
+            configuration.setParser(PARSER);
+            configuration.loadFromBuffer(FileConfiguration.decode(ByteBuffer.wrap(bytes)), null);
+            FrozenConfiguration frozen = configuration.freeze();
+
+            synchronized (this) {
+                acquired.put(frozen, snapshot);
+            }
+            snapshot.frozen.complete(frozen);
+        } catch (IOException e) {
+            fail(snapshot, new IOConfigurationException(e));
+        } catch (ConfigurationException | RuntimeException e) {
+            fail(snapshot, e);
+        } catch (Error e) {
+            // Waiting acquires must not hang, whatever went wrong
+            fail(snapshot, e);
+            throw e;
+        }
+    }
+
+    private void fail(Snapshot snapshot, Throwable e) {
+        // Next acquire parses the file again
+        synchronized (this) {
+            files.remove(snapshot.path, snapshot);
+        }
+        snapshot.frozen.completeExceptionally(e);
+    }
+
+    private static byte[] hash(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            // Required on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Snapshot {
+
+        private final Path path;
+        private final byte[] hash;
+        private final CompletableFuture<FrozenConfiguration> frozen = new CompletableFuture<>();
+
+        // Guarded by the registry
+        private int references = 0;
+
+        private Snapshot(Path path, byte[] hash) {
+            this.path = path;
+            this.hash = hash;
+        }
+
+    }
+
+}
@@ -0,0 +1,578 @@
+package fr.onecraft.config;
+
+import net.md_5.bungee.config.Configuration;
+
+import java.math.BigInteger;
+import java.nio.CharBuffer;
+import java.util.*;
+
+/**
+ * Parser of the common subset of YAML, building the tree directly
+ * <p>
+ * Supports block mappings and sequences, plain and quoted scalars,
+ * literal blocks, empty collections and flow sequences of scalars.
+ * Scalars are resolved as SnakeYAML does, so trees are identical.
+ * <p>
+ * Anchors, aliases, tags, directives, folded or multi-line scalars,
+ * nested flow collections, mappings in sequences, tabs and scalars which
+ * may resolve to other types (dates, octal numbers...) are not supported:
+ * the document is then left to SnakeYAML.
+ */
+public final class SimpleYamlParser implements ConfigurationParser {
+
+    private static final Set<String> TRUE = new HashSet<>(Arrays.asList(
+            "yes", "Yes", "YES", "true", "True", "TRUE", "on", "On", "ON"
+    ));
+    private static final Set<String> FALSE = new HashSet<>(Arrays.asList(
+            "no", "No", "NO", "false", "False", "FALSE", "off", "Off", "OFF"
+    ));
+    private static final Set<String> NULL = new HashSet<>(Arrays.asList(
+            "~", "null", "Null", "NULL"
+    ));
+
+    // Characters which can't start a plain scalar
+    private static final String INDICATORS = "-?:,[]{}#&*!|>'\"%@`";
+
+    // Simple keys are limited in length by SnakeYAML
+    private static final int MAX_KEY_LENGTH = 1024;
+
+    @Override
+    public Configuration parse(CharBuffer contents, Configuration defaults) {
+        if (!isSupported(contents)) return null;
+        try {
+            return new Scanner(contents).document(defaults);
+        } catch (Unsupported e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether the document only holds characters handled the same way by both parsers
+     */
+    private static boolean isSupported(CharSequence input) {
+        int length = input.length();
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            if (c >= 0x20 && c < 0x7F) continue;
+            if (c == '\n') continue;
+            if (c == '\r' && i + 1 < length && input.charAt(i + 1) == '\n') continue;
+            if (c >= 0xA0 && c < 0xD800 && c != 0x2028 && c != 0x2029) continue;
+            if (c >= 0xE000 && c < 0xFFFE && c != 0xFEFF) continue;
+            // Tabs, other line breaks such as line and paragraph separators, byte order marks,
+            // surrogates and non printable characters
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Thrown when the document uses a construct this parser doesn't handle
+     */
+    private static final class Unsupported extends Exception {
+
+        private static final Unsupported INSTANCE = new Unsupported();
+
+        private Unsupported() {
+            super(null, null, false, false);
+        }
+
+    }
+
+    private static final class Scanner {
+
+        private final CharSequence input;
+        private final int length;
+
+        // Start of the current line
+        private int line = 0;
+
+        private Scanner(CharSequence input) {
+            this.input = input;
+            this.length = input.length();
+        }
+
+        // ----------------------------------------
+        // STRUCTURE
+        // ----------------------------------------
+
+        private Configuration document(Configuration defaults) throws Unsupported {
+            if (!skipToContent()) return new Configuration(defaults);
+
+            Configuration root = mapping(indent(line), defaults);
+            if (skipToContent()) throw Unsupported.INSTANCE;
+            return root;
+        }
+
+        private Configuration mapping(int indent, Configuration defaults) throws Unsupported {
+            Configuration section = new Configuration(defaults);
+            Map<String, Object> values = Sections.values(section);
+            if (values == null) throw Unsupported.INSTANCE;
+
+            while (skipToContent()) {
+                int lineIndent = indent(line);
+                if (lineIndent < indent) break;
+                if (lineIndent > indent) throw Unsupported.INSTANCE;
+
+                int end = lineEnd(line);
+                int[] position = {line + indent};
+                String key = key(position, end);
+                if (values.containsKey(key)) throw Unsupported.INSTANCE;
+
+                int p = skipSpaces(position[0], end);
+                Object value;
+                if (p == end || input.charAt(p) == '#') {
+                    line = nextLine(end);
+                    value = block(indent, key, defaults);
+                } else {
+                    value = inline(p, end, indent, key, defaults);
+                }
+                values.put(key, value);
+            }
+
+            return section;
+        }
+
+        /**
+         * Value on the lines following a key
+         */
+        private Object block(int parentIndent, String key, Configuration defaults) throws Unsupported {
+            if (!skipToContent()) return null;
+
+            int lineIndent = indent(line);
+            boolean entry = isEntry(line + lineIndent);
+
+            if (lineIndent > parentIndent) {
+                return entry ? sequence(lineIndent) : mapping(lineIndent, child(defaults, key));
+            } else if (lineIndent == parentIndent && entry) {
+                // Sequences may be at the same level as their key
+                return sequence(lineIndent);
+            }
+            return null;
+        }
+
+        /**
+         * Value on the line of its key, moves to the next line
+         */
+        private Object inline(int p, int end, int parentIndent, String key, Configuration defaults) throws Unsupported {
+            char c = input.charAt(p);
+            Object value;
+
+            if (c == '|') {
+                return literal(p, end, parentIndent);
+            } else if (c == '[') {
+                int[] position = {p + 1};
+                value = flowSequence(position, end);
+                p = position[0];
+            } else if (c == '{') {
+                p = skipSpaces(p + 1, end);
+                if (p == end || input.charAt(p) != '}') throw Unsupported.INSTANCE;
+                p++;
+                value = new Configuration(child(defaults, key));
+            } else {
+                int[] position = {p};
+                value = scalar(position, end);
+                p = position[0];
+            }
+
+            endLine(p, end);
+            return value;
+        }
+
+        private List<Object> sequence(int indent) throws Unsupported {
+            List<Object> list = new ArrayList<>();
+
+            while (skipToContent()) {
+                int lineIndent = indent(line);
+                if (lineIndent < indent) break;
+                if (lineIndent > indent) throw Unsupported.INSTANCE;
+
+                int p = line + indent;
+                if (!isEntry(p)) break;
+
+                int end = lineEnd(line);
+                p = skipSpaces(p + 1, end);
+                if (p == end || input.charAt(p) == '#') throw Unsupported.INSTANCE;
+
+                int[] position = {p};
+                list.add(scalar(position, end));
+                endLine(position[0], end);
+            }
+
+            return list;
+        }
+
+        private List<Object> flowSequence(int[] position, int end) throws Unsupported {
+            List<Object> list = new ArrayList<>();
+
+            int p = skipSpaces(position[0], end);
+            if (p < end && input.charAt(p) == ']') {
+                position[0] = p + 1;
+                return list;
+            }
+
+            while (true) {
+                p = skipSpaces(p, end);
+                if (p == end) throw Unsupported.INSTANCE;
+
+                Object item;
+                char c = input.charAt(p);
+                if (c == '\'' || c == '"') {
+                    int[] item_position = {p};
+                    item = quoted(item_position, end);
+                    p = item_position[0];
+                } else {
+                    int start = p;
+                    checkPlainStart(start, end);
+                    while (p < end) {
+                        char ch = input.charAt(p);
+                        if (ch == ',' || ch == ']') break;
+                        if (ch == '[' || ch == '{' || ch == '}' || ch == ':' || (ch == '#' && input.charAt(p - 1) == ' ')) {
+                            throw Unsupported.INSTANCE;
+                        }
+                        p++;
+                    }
+                    item = resolve(trimRight(start, p));
+                }
+                list.add(item);
+
+                p = skipSpaces(p, end);
+                if (p == end) throw Unsupported.INSTANCE;
+                char separator = input.charAt(p++);
+                if (separator == ']') break;
+                if (separator != ',') throw Unsupported.INSTANCE;
+
+                // Trailing comma
+                int next = skipSpaces(p, end);
+                if (next < end && input.charAt(next) == ']') throw Unsupported.INSTANCE;
+            }
+
+            position[0] = p;
+            return list;
+        }
+
+        /**
+         * Literal block, kept line by line with clip or strip chomping
+         */
+        private String literal(int p, int end, int parentIndent) throws Unsupported {
+            p++;
+            boolean strip = p < end && input.charAt(p) == '-';
+            if (strip) p++;
+            endLine(p, end);
+
+            // Indentation of the block is the one of its first line
+            int blockIndent = -1;
+            int maxBlank = 0;
+            for (int start = line; start < length; start = nextLine(lineEnd(start))) {
+                int lineIndent = indent(start);
+                if (start + lineIndent == lineEnd(start)) {
+                    maxBlank = Math.max(maxBlank, lineIndent);
+                } else {
+                    blockIndent = lineIndent;
+                    break;
+                }
+            }
+            if (blockIndent <= parentIndent || maxBlank > blockIndent) throw Unsupported.INSTANCE;
+
+            StringBuilder builder = new StringBuilder();
+            int blanks = 0;
+            boolean first = true;
+            boolean lineBreak = false;
+
+            while (line < length) {
+                int lineEnd = lineEnd(line);
+                int lineIndent = indent(line);
+
+                if (line + lineIndent == lineEnd) {
+                    // Spaces beyond the indentation would be content
+                    if (lineIndent > blockIndent) throw Unsupported.INSTANCE;
+                    blanks++;
+                } else if (lineIndent < blockIndent) {
+                    break;
+                } else {
+                    if (!first) builder.append('\n');
+                    for (; blanks > 0; blanks--) builder.append('\n');
+                    builder.append(input, line + blockIndent, lineEnd);
+                    first = false;
+                    lineBreak = lineEnd < length;
+                }
+
+                line = nextLine(lineEnd);
+            }
+
+            if (!strip && lineBreak) builder.append('\n');
+            return builder.toString();
+        }
+
+        // ----------------------------------------
+        // SCALARS
+        // ----------------------------------------
+
+        /**
+         * Key of a mapping entry, position is moved after the colon
+         */
+        private String key(int[] position, int end) throws Unsupported {
+            int start = position[0];
+            int p = start;
+            String key;
+
+            char c = input.charAt(p);
+            if (c == '\'' || c == '"') {
+                key = quoted(position, end);
+                p = skipSpaces(position[0], end);
+                if (p == end || input.charAt(p) != ':') throw Unsupported.INSTANCE;
+            } else {
+                checkPlainStart(start, end);
+                while (true) {
+                    if (p == end) throw Unsupported.INSTANCE;
+                    char ch = input.charAt(p);
+                    if (ch == ':' && (p + 1 == end || input.charAt(p + 1) == ' ')) break;
+                    if (ch == '#' && input.charAt(p - 1) == ' ') throw Unsupported.INSTANCE;
+                    p++;
+                }
+                // Configuration turns keys into strings
+                key = String.valueOf(resolve(trimRight(start, p)));
+            }
+
+            // Quotes included, as counted by SnakeYAML
+            if (p - start > MAX_KEY_LENGTH) throw Unsupported.INSTANCE;
+
+            // Colon must be followed by a space or the end of the line
+            p++;
+            if (p < end && input.charAt(p) != ' ') throw Unsupported.INSTANCE;
+            position[0] = p;
+            return key;
+        }
+
+        /**
+         * Scalar value in block context
+         */
+        private Object scalar(int[] position, int end) throws Unsupported {
+            int p = position[0];
+            char c = input.charAt(p);
+            if (c == '\'' || c == '"') return quoted(position, end);
+
+            int start = p;
+            checkPlainStart(start, end);
+            while (p < end) {
+                char ch = input.charAt(p);
+                if (ch == ':' && (p + 1 == end || input.charAt(p + 1) == ' ')) throw Unsupported.INSTANCE;
+                if (ch == '#' && input.charAt(p - 1) == ' ') break;
+                p++;
+            }
+
+            position[0] = p;
+            return resolve(trimRight(start, p));
+        }
+
+        private void checkPlainStart(int p, int end) throws Unsupported {
+            char c = input.charAt(p);
+            if (INDICATORS.indexOf(c) < 0) return;
+            // Negative numbers
+            if (c == '-' && p + 1 < end && isDigit(input.charAt(p + 1))) return;
+            throw Unsupported.INSTANCE;
+        }
+
+        /**
+         * Quoted scalar on a single line, position is moved after the closing quote
+         */
+        private String quoted(int[] position, int end) throws Unsupported {
+            int p = position[0];
+            char quote = input.charAt(p++);
+            StringBuilder builder = null;
+            int start = p;
+
+            while (true) {
+                if (p >= end) throw Unsupported.INSTANCE;
+                char c = input.charAt(p);
+
+                if (c == quote) {
+                    if (quote == '\'' && p + 1 < end && input.charAt(p + 1) == '\'') {
+                        // Escaped single quote
+                        if (builder == null) builder = new StringBuilder();
+                        builder.append(input, start, p + 1);
+                        p += 2;
+                        start = p;
+                        continue;
+                    }
+                    break;
+                }
+
+                if (c == '\\' && quote == '"') {
+                    if (builder == null) builder = new StringBuilder();
+                    builder.append(input, start, p);
+                    p = escape(builder, p + 1, end);
+                    start = p;
+                    continue;
+                }
+
+                p++;
+            }
+
+            position[0] = p + 1;
+            if (builder == null) return input.subSequence(start, p).toString();
+            return builder.append(input, start, p).toString();
+        }
+
+        /**
+         * Append an escaped character
+         *
+         * @return position after the escape sequence
+         */
+        private int escape(StringBuilder builder, int p, int end) throws Unsupported {
+            if (p >= end) throw Unsupported.INSTANCE;
+            char c = input.charAt(p);
+            switch (c) {
+                case '\\':
+                case '"':
+                    builder.append(c);
+                    return p + 1;
+                case 'n':
+                    builder.append('\n');
+                    return p + 1;
+                case 't':
+                    builder.append('\t');
+                    return p + 1;
+                case 'r':
+                    builder.append('\r');
+                    return p + 1;
+                case '0':
+                    builder.append('\0');
+                    return p + 1;
+                case 'u':
+                    if (p + 5 > end) throw Unsupported.INSTANCE;
+                    int code = 0;
+                    for (int i = p + 1; i < p + 5; i++) {
+                        int digit = Character.digit(input.charAt(i), 16);
+                        if (digit < 0) throw Unsupported.INSTANCE;
+                        code = code * 16 + digit;
+                    }
+                    if (Character.isSurrogate((char) code)) throw Unsupported.INSTANCE;
+                    builder.append((char) code);
+                    return p + 5;
+                default:
+                    throw Unsupported.INSTANCE;
+            }
+        }
+
+        /**
+         * Resolve a plain scalar, with the implicit types of SnakeYAML
+         */
+        private static Object resolve(String value) throws Unsupported {
+            if (TRUE.contains(value)) return Boolean.TRUE;
+            if (FALSE.contains(value)) return Boolean.FALSE;
+            if (NULL.contains(value)) return null;
+
+            char c = value.charAt(0);
+            if (isDigit(c) || c == '-') return number(value);
+            if (c == '+' || c == '.' || value.equals("<<") || value.equals("=")) throw Unsupported.INSTANCE;
+            return value;
+        }
+
+        /**
+         * Decimal numbers, other forms of numbers and dates are left to SnakeYAML
+         */
+        private static Object number(String value) throws Unsupported {
+            int start = value.charAt(0) == '-' ? 1 : 0;
+            int dot = -1;
+            for (int i = start; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '.' && dot < 0 && i > start) {
+                    dot = i;
+                } else if (!isDigit(c)) {
+                    throw Unsupported.INSTANCE;
+                }
+            }
+
+            if (dot < 0) {
+                // Leading zeros are octal numbers
+                if (value.length() - start > 1 && value.charAt(start) == '0') throw Unsupported.INSTANCE;
+                try {
+                    return Integer.valueOf(value);
+                } catch (NumberFormatException e) {
+                    try {
+                        return Long.valueOf(value);
+                    } catch (NumberFormatException e1) {
+                        return new BigInteger(value);
+                    }
+                }
+            }
+
+            if (dot == value.length() - 1) throw Unsupported.INSTANCE;
+            return Double.valueOf(value);
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        // ----------------------------------------
+        // LINES
+        // ----------------------------------------
+
+        /**
+         * Move to the next line with content, skipping blank lines and comments
+         *
+         * @return false at the end of the document
+         */
+        private boolean skipToContent() {
+            while (line < length) {
+                int end = lineEnd(line);
+                int p = skipSpaces(line, end);
+                if (p < end && input.charAt(p) != '#') return true;
+                line = nextLine(end);
+            }
+            return false;
+        }
+
+        /**
+         * Check that only a comment follows, then move to the next line
+         */
+        private void endLine(int p, int end) throws Unsupported {
+            int next = skipSpaces(p, end);
+            if (next < end && (input.charAt(next) != '#' || next == p)) throw Unsupported.INSTANCE;
+            line = nextLine(end);
+        }
+
+        private boolean isEntry(int p) {
+            if (input.charAt(p) != '-') return false;
+            return p + 1 == length || input.charAt(p + 1) == ' ' || input.charAt(p + 1) == '\n' || input.charAt(p + 1) == '\r';
+        }
+
+        private int indent(int start) {
+            int end = lineEnd(start);
+            return skipSpaces(start, end) - start;
+        }
+
+        private int skipSpaces(int p, int end) {
+            while (p < end && input.charAt(p) == ' ') p++;
+            return p;
+        }
+
+        /**
+         * End of the line starting at the given index, excluding line break
+         */
+        private int lineEnd(int start) {
+            int end = start;
+            while (end < length && input.charAt(end) != '\n') end++;
+            if (end > start && input.charAt(end - 1) == '\r') end--;
+            return end;
+        }
+
+        private int nextLine(int end) {
+            if (end < length && input.charAt(end) == '\r') end++;
+            return end + 1;
+        }
+
+        private String trimRight(int start, int end) {
+            while (end > start && input.charAt(end - 1) == ' ') end--;
+            return input.subSequence(start, end).toString();
+        }
+
+        private static Configuration child(Configuration defaults, String key) {
+            // Same defaults as Configuration gives to its sections
+            return defaults == null ? null : defaults.getSection(key);
+        }
+
+    }
+
+}
@@ -0,0 +1,230 @@
+package fr.onecraft.config;
+
+import net.md_5.bungee.config.Configuration;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Binary copy of a parsed tree, stored next to its file
+ * <p>
+ * The copy is only used while the file keeps the size, modification
+ * time and hash it had when the copy was written.
+ */
+final class SnapshotCache {
+
+    private static final int MAGIC = 0x42594331; // BYC1
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte TRUE = 2;
+    private static final byte FALSE = 3;
+    private static final byte INT = 4;
+    private static final byte LONG = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte BIG_INTEGER = 7;
+    private static final byte LIST = 8;
+    private static final byte MAP = 9;
+
+    private SnapshotCache() {}
+
+    /**
+     * File holding the copy of a configuration file
+     */
+    static File cacheFile(File file) {
+        return new File(file.getParentFile(), file.getName() + ".cache");
+    }
+
+    // ----------------------------------------
+    // READ
+    // ----------------------------------------
+
+    /**
+     * Read the copy of a tree if it's still valid
+     *
+     * @return snapshot, or null if missing, outdated or corrupted
+     */
+    static Snapshot read(File cache, long size, long modified, long hash) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(cache.toPath());
+        } catch (IOException e) {
+            return null;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            if (buffer.getInt() != MAGIC) return null;
+            if (buffer.getLong() != size || buffer.getLong() != modified || buffer.getLong() != hash) return null;
+
+            String header = readString(buffer);
+            @SuppressWarnings("unchecked")
+            Map<Object, Object> values = (Map<Object, Object>) readValue(buffer);
+            if (buffer.hasRemaining()) return null;
+            return new Snapshot(header, values);
+
+        } catch (RuntimeException e) {
+            // Truncated or not written by this version
+            return null;
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(buffer);
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INT:
+                return buffer.getInt();
+            case LONG:
+                return buffer.getLong();
+            case DOUBLE:
+                return buffer.getDouble();
+            case BIG_INTEGER:
+                return new BigInteger(readString(buffer));
+            case LIST: {
+                int size = readSize(buffer);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(buffer));
+                }
+                return list;
+            }
+            case MAP: {
+                int size = readSize(buffer);
+                Map<Object, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    Object key = readValue(buffer);
+                    map.put(key, readValue(buffer));
+                }
+                return map;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown tag " + tag);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = readSize(buffer);
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static int readSize(ByteBuffer buffer) {
+        // Each element takes at least a byte, a larger size can only be corrupted
+        // and must not be allocated
+        int size = buffer.getInt();
+        if (size < 0 || size > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid size " + size);
+        }
+        return size;
+    }
+
+    // ----------------------------------------
+    // WRITE
+    // ----------------------------------------
+
+    /**
+     * Write the copy of a tree, replacing the previous one
+     *
+     * @return false if the tree holds values that can't be stored
+     */
+    static boolean write(File cache, long size, long modified, long hash, String header, Configuration tree) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(MAGIC);
+            output.writeLong(size);
+            output.writeLong(modified);
+            output.writeLong(hash);
+            writeString(output, header);
+            if (!writeValue(output, tree)) return false;
+        }
+
+        Path target = cache.toPath().toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, bytes.toByteArray());
+            FileConfiguration.move(temp, target);
+            temp = null;
+        } finally {
+            if (temp != null) Files.deleteIfExists(temp);
+        }
+        return true;
+    }
+
+    private static boolean writeValue(DataOutputStream output, Object value) throws IOException {
+        if (value == null) {
+            output.writeByte(NULL);
+        } else if (value instanceof String) {
+            output.writeByte(STRING);
+            writeString(output, (String) value);
+        } else if (value instanceof Boolean) {
+            output.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer) {
+            output.writeByte(INT);
+            output.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            output.writeByte(LONG);
+            output.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            output.writeByte(DOUBLE);
+            output.writeDouble((Double) value);
+        } else if (value instanceof BigInteger) {
+            output.writeByte(BIG_INTEGER);
+            writeString(output, value.toString());
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            output.writeByte(LIST);
+            output.writeInt(list.size());
+            for (Object element : list) {
+                if (!writeValue(output, element)) return false;
+            }
+        } else if (value instanceof Configuration) {
+            Map<String, Object> values = Sections.values((Configuration) value);
+            if (values == null) values = Sections.toValues((Configuration) value);
+            return writeValue(output, values);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            output.writeByte(MAP);
+            output.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!writeValue(output, entry.getKey()) || !writeValue(output, entry.getValue())) return false;
+            }
+        } else {
+            // Dates, binary and other tagged values are left to YAML
+            return false;
+        }
+        return true;
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    static final class Snapshot {
+
+        final String header;
+        final Map<Object, Object> values;
+
+        private Snapshot(String header, Map<Object, Object> values) {
+            this.header = header;
+            this.values = values;
+        }
+
+    }
+
+}
@@ -0,0 +1,568 @@
+package fr.onecraft.config;
+
+import net.md_5.bungee.config.Configuration;
+import net.md_5.bungee.config.ConfigurationProvider;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.*;
+
+/**
+ * Text of a loaded document, with the position of each entry
+ * <p>
+ * Used to save a tree by patching the entries which changed since
+ * loading, so comments and layout of the rest of the file are kept.
+ * Only block mappings are indexed: documents using tabs, anchors, tags,
+ * complex keys or several documents aren't supported.
+ */
+final class SourceDocument {
+
+    private final String text;
+    private final Entry root;
+
+    // Values of the tree when the text was read, to find changes
+    private final Map<String, Object> original;
+
+    private SourceDocument(String text, Entry root, Map<String, Object> original) {
+        this.text = text;
+        this.root = root;
+        this.original = original;
+    }
+
+    String text() {
+        return text;
+    }
+
+    /**
+     * Index a document
+     *
+     * @param text Text of the document
+     * @param tree Tree parsed from the text
+     * @return document, or null if the text can't be indexed
+     */
+    static SourceDocument scan(CharSequence text, Configuration tree) {
+        String source = text.toString();
+        if (source.indexOf('\t') >= 0 || source.indexOf('\r') >= 0 || source.indexOf('\uFEFF') >= 0) return null;
+        // Line breaks for SnakeYAML, not for the scanner
+        if (source.indexOf('\u2028') >= 0 || source.indexOf('\u2029') >= 0) return null;
+        if (!source.isEmpty() && !source.endsWith("\n")) source += "\n";
+
+        Map<String, Object> values = Sections.values(tree);
+        if (values == null || values.isEmpty()) return null;
+
+        Entry root = new Scanner(source).document();
+        if (root == null || !bind(root, values)) return null;
+
+        Map<String, Object> original = snapshot(values);
+        return original == null ? null : new SourceDocument(source, root, original);
+    }
+
+    /**
+     * Match entries with the keys of the tree
+     * <p>
+     * Entries are matched by key, then the remaining ones in document
+     * order, for keys resolved by the parser to something else.
+     */
+    private static boolean bind(Entry section, Map<String, Object> values) {
+        if (section.children.size() != values.size()) return false;
+
+        for (Entry entry : section.children) {
+            if (entry.key != null && values.containsKey(entry.key)) {
+                if (section.keys.put(entry.key, entry) != null) return false;
+            } else {
+                entry.key = null;
+            }
+        }
+
+        Iterator<String> remaining = values.keySet().iterator();
+        for (Entry entry : section.children) {
+            if (entry.key == null) {
+                String key;
+                do {
+                    key = remaining.next();
+                } while (section.keys.containsKey(key));
+                entry.key = key;
+                section.keys.put(key, entry);
+            }
+
+            if (entry.children != null) {
+                Object value = values.get(entry.key);
+                if (!(value instanceof Configuration)) return false;
+                Map<String, Object> children = Sections.values((Configuration) value);
+                if (children == null || !bind(entry, children)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy of the values, with sections as maps
+     */
+    private static Map<String, Object> snapshot(Map<String, Object> values) {
+        Map<String, Object> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Configuration) {
+                Map<String, Object> section = Sections.values((Configuration) value);
+                value = section == null ? null : snapshot(section);
+                if (value == null) return null;
+            } else if (value instanceof List) {
+                value = new ArrayList<>((List<?>) value);
+            }
+            copy.put(entry.getKey(), value);
+        }
+        return copy;
+    }
+
+    // ----------------------------------------
+    // PATCH
+    // ----------------------------------------
+
+    /**
+     * Document holding a tree, made from this one by rewriting the entries which changed
+     *
+     * @param tree     Tree to save
+     * @param provider Writer of the changed entries
+     * @return new document, or null if the whole tree must be written instead
+     */
+    SourceDocument patch(Configuration tree, ConfigurationProvider provider) throws IOException {
+        Map<String, Object> values = Sections.values(tree);
+        if (values == null || values.isEmpty()) return null;
+
+        List<Edit> edits = new ArrayList<>();
+        if (!diff(root, original, values, provider, edits)) return null;
+        if (edits.isEmpty()) {
+            Map<String, Object> saved = snapshot(values);
+            return saved == null ? null : new SourceDocument(text, root, saved);
+        }
+
+        // Inserts come before the removal of the entry they're placed at
+        edits.sort(Comparator.<Edit>comparingInt(edit -> edit.start).thenComparingInt(edit -> edit.end));
+
+        StringBuilder builder = new StringBuilder(text.length() + 256);
+        int position = 0;
+        for (Edit edit : edits) {
+            builder.append(text, position, edit.start).append(edit.replacement);
+            position = edit.end;
+        }
+        builder.append(text, position, text.length());
+
+        // Positions changed, the new text is indexed again
+        return scan(builder, tree);
+    }
+
+    private static boolean diff(Entry section, Map<String, Object> before, Map<String, Object> after,
+                                ConfigurationProvider provider, List<Edit> edits) throws IOException {
+
+        for (Entry entry : section.children) {
+            if (!after.containsKey(entry.key)) {
+                edits.add(new Edit(entry.lineStart, entry.end, ""));
+                continue;
+            }
+
+            Object previous = before.get(entry.key);
+            Object value = after.get(entry.key);
+
+            if (entry.children != null && value instanceof Configuration) {
+                Map<String, Object> children = Sections.values((Configuration) value);
+                if (children == null) return false;
+                if (!children.isEmpty()) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> previousChildren = (Map<String, Object>) previous;
+                    if (!diff(entry, previousChildren, children, provider, edits)) return false;
+                    continue;
+                }
+            } else if (same(previous, value)) {
+                continue;
+            }
+
+            String inline = entry.inline ? inline(value, provider) : null;
+            if (inline != null) {
+                edits.add(new Edit(entry.valueStart, entry.valueEnd, inline));
+            } else {
+                edits.add(new Edit(entry.lineStart, entry.end, render(entry.key, value, section.childIndent, provider)));
+            }
+        }
+
+        // New keys follow the entry before them in the tree
+        Entry previous = null;
+        for (Map.Entry<String, Object> value : after.entrySet()) {
+            Entry entry = section.keys.get(value.getKey());
+            if (entry != null) {
+                previous = entry;
+                continue;
+            }
+            int position = previous != null ? previous.end : section.children.get(0).lineStart;
+            edits.add(new Edit(position, position, render(value.getKey(), value.getValue(), section.childIndent, provider)));
+        }
+        return true;
+    }
+
+    private static boolean same(Object before, Object after) {
+        if (before instanceof Map && after instanceof Configuration) {
+            Map<String, Object> values = Sections.values((Configuration) after);
+            return values != null && Sections.equal(before, values);
+        }
+        return Sections.equal(before, after);
+    }
+
+    /**
+     * Entry written as YAML, indented
+     */
+    private static String render(String key, Object value, int indent, ConfigurationProvider provider) throws IOException {
+        String yaml = dump(key, value, provider);
+        if (indent == 0) return yaml;
+
+        StringBuilder builder = new StringBuilder(yaml.length() + 16);
+        int start = 0;
+        while (start < yaml.length()) {
+            int end = yaml.indexOf('\n', start) + 1;
+            if (end == 0) end = yaml.length();
+            if (end - start > 1) {
+                for (int i = 0; i < indent; i++) builder.append(' ');
+            }
+            builder.append(yaml, start, end);
+            start = end;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Value written on a single line, or null if it needs several lines
+     */
+    private static String inline(Object value, ConfigurationProvider provider) throws IOException {
+        if (value instanceof Configuration || value instanceof Map || value instanceof List) return null;
+
+        String yaml = dump("k", value, provider);
+        if (!yaml.startsWith("k: ") || yaml.indexOf('\n') != yaml.length() - 1) return null;
+        return yaml.substring(3, yaml.length() - 1);
+    }
+
+    private static String dump(String key, Object value, ConfigurationProvider provider) throws IOException {
+        Configuration entry = new Configuration();
+        Map<String, Object> values = Sections.values(entry);
+        if (values == null) throw new IOException("Can't write entry " + key);
+        values.put(key, value);
+
+        StringWriter writer = new StringWriter();
+        YamlEmitter.save(provider, entry, writer);
+        return writer.toString();
+    }
+
+    private static final class Edit {
+
+        private final int start;
+        private final int end;
+        private final String replacement;
+
+        private Edit(int start, int end, String replacement) {
+            this.start = start;
+            this.end = end;
+            this.replacement = replacement;
+        }
+
+    }
+
+    // ----------------------------------------
+    // INDEX
+    // ----------------------------------------
+
+    private static final class Entry {
+
+        private String key;
+
+        // Start of the key line, and end of the last line of the value
+        private int lineStart;
+        private int end;
+
+        // Range of a single line value, if inline
+        private boolean inline;
+        private int valueStart;
+        private int valueEnd;
+
+        // Entries of a block mapping value, null otherwise
+        private List<Entry> children;
+        private Map<String, Entry> keys;
+        private int childIndent;
+
+        private Entry(int lineStart) {
+            this.lineStart = lineStart;
+        }
+
+        private void section(int indent) {
+            children = new ArrayList<>();
+            keys = new HashMap<>();
+            childIndent = indent;
+        }
+
+    }
+
+    private static final class Scanner {
+
+        private final String text;
+        private final int length;
+        private int line = 0;
+        private boolean unsupported = false;
+
+        // Key of the last entry read, null if it can't be decoded
+        private String key;
+
+        private Scanner(String text) {
+            this.text = text;
+            this.length = text.length();
+        }
+
+        private Entry document() {
+            if (!skipTrivia()) return null;
+            int indent = indent(line);
+            if (isItem(line + indent)) return null;
+
+            Entry root = new Entry(0);
+            root.section(indent);
+            if (!mapping(root)) return null;
+
+            // Content left at a lower indentation
+            return skipTrivia() || unsupported ? null : root;
+        }
+
+        private boolean mapping(Entry section) {
+            int indent = section.childIndent;
+            while (skipTrivia()) {
+                int lineIndent = indent(line);
+                if (lineIndent < indent) break;
+                if (lineIndent > indent) return false;
+
+                Entry entry = entry(indent);
+                if (entry == null) return false;
+                section.children.add(entry);
+            }
+            return !unsupported;
+        }
+
+        private Entry entry(int indent) {
+            Entry entry = new Entry(line);
+            int lineEnd = lineEnd(line);
+
+            int colon = key(line + indent, lineEnd);
+            if (colon < 0) return null;
+            entry.key = key;
+
+            line = lineEnd + 1;
+            entry.end = line;
+            if (!value(entry, indent, skipSpaces(colon + 1, lineEnd), lineEnd)) return null;
+
+            // Comments indented below the entry belong to it, a block scalar before them would take them
+            int next = entry.end;
+            while (next < length) {
+                int nextEnd = lineEnd(next);
+                int nextIndent = indent(next);
+                if (next + nextIndent < nextEnd) {
+                    if (nextIndent <= indent || text.charAt(next + nextIndent) != '#') break;
+                    entry.end = nextEnd + 1;
+                }
+                next = nextEnd + 1;
+            }
+            line = Math.max(line, entry.end);
+            return entry;
+        }
+
+        private boolean value(Entry entry, int indent, int value, int lineEnd) {
+            if (value == lineEnd || text.charAt(value) == '#') {
+                // Value on the following lines
+                int next = nextContent();
+                if (next < 0) return true;
+
+                int nextIndent = indent(next);
+                boolean item = isItem(next + nextIndent);
+                if (nextIndent > indent && !item) {
+                    entry.section(nextIndent);
+                    if (!mapping(entry)) return false;
+                    entry.end = entry.children.get(entry.children.size() - 1).end;
+                } else if (item && nextIndent >= indent) {
+                    sequence(entry, indent);
+                }
+                return true;
+            }
+
+            char c = text.charAt(value);
+            if (c == '&' || c == '*' || c == '!') return false;
+
+            body(entry, indent);
+            if (entry.end != lineEnd + 1) return true;
+
+            int valueEnd = scalarEnd(value, lineEnd);
+            if (valueEnd >= 0) {
+                entry.inline = true;
+                entry.valueStart = value;
+                entry.valueEnd = valueEnd;
+            }
+            return true;
+        }
+
+        /**
+         * End of a single line scalar, or -1 if the value isn't a plain or quoted scalar
+         */
+        private int scalarEnd(int p, int lineEnd) {
+            char c = text.charAt(p);
+            int end;
+            if (c == '\'' || c == '"') {
+                end = quotedEnd(p, lineEnd);
+                if (end < 0) return -1;
+            } else if ("[]{}|>%@`".indexOf(c) >= 0) {
+                return -1;
+            } else {
+                end = p;
+                while (end < lineEnd && !(text.charAt(end) == '#' && text.charAt(end - 1) == ' ')) end++;
+                while (text.charAt(end - 1) == ' ') end--;
+                return end;
+            }
+
+            // Only a comment may follow a quoted scalar
+            int rest = skipSpaces(end, lineEnd);
+            if (rest < lineEnd && (rest == end || text.charAt(rest) != '#')) return -1;
+            return end;
+        }
+
+        /**
+         * Position of the colon after a key, or -1 if the line isn't a simple key
+         */
+        private int key(int p, int lineEnd) {
+            char c = text.charAt(p);
+            int end;
+            if (c == '\'' || c == '"') {
+                end = quotedEnd(p, lineEnd);
+                if (end < 0) return -1;
+                String content = text.substring(p + 1, end - 1);
+                if (c == '\'') {
+                    key = content.replace("\'\'", "\'");
+                } else {
+                    key = content.indexOf('\\') < 0 ? content : null;
+                }
+                end = skipSpaces(end, lineEnd);
+                if (end >= lineEnd || text.charAt(end) != ':') return -1;
+            } else {
+                if ("?-:,[]{}#&*!|>%@`".indexOf(c) >= 0) return -1;
+                end = p;
+                while (true) {
+                    if (end >= lineEnd) return -1;
+                    char ch = text.charAt(end);
+                    if (ch == ':' && (end + 1 == lineEnd || text.charAt(end + 1) == ' ')) break;
+                    if (ch == '#' && text.charAt(end - 1) == ' ') return -1;
+                    end++;
+                }
+                int keyEnd = end;
+                while (text.charAt(keyEnd - 1) == ' ') keyEnd--;
+                key = text.substring(p, keyEnd);
+            }
+            return end + 1 < lineEnd && text.charAt(end + 1) != ' ' ? -1 : end;
+        }
+
+        /**
+         * Position after the closing quote of a scalar on a single line, or -1
+         */
+        private int quotedEnd(int p, int lineEnd) {
+            char quote = text.charAt(p);
+            int end = p + 1;
+            while (end < lineEnd) {
+                char c = text.charAt(end);
+                if (c == '\\' && quote == '"') {
+                    end += 2;
+                } else if (c == quote) {
+                    if (quote == '\'' && end + 1 < lineEnd && text.charAt(end + 1) == '\'') {
+                        end += 2;
+                    } else {
+                        return end + 1;
+                    }
+                } else {
+                    end++;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Items of a sequence, at the indentation of its key or deeper
+         */
+        private void sequence(Entry entry, int indent) {
+            while (true) {
+                int next = nextContent();
+                if (next < 0) return;
+                int nextIndent = indent(next);
+                if (nextIndent < indent || (nextIndent == indent && !isItem(next + nextIndent))) return;
+                line = lineEnd(next) + 1;
+                entry.end = line;
+            }
+        }
+
+        /**
+         * Lines of a value continued below its key, such as literal blocks
+         */
+        private void body(Entry entry, int indent) {
+            while (line < length) {
+                int lineEnd = lineEnd(line);
+                int lineIndent = indent(line);
+                if (line + lineIndent == lineEnd) {
+                    line = lineEnd + 1;
+                    continue;
+                }
+                if (lineIndent <= indent) break;
+                line = lineEnd + 1;
+                entry.end = line;
+            }
+            // Blank lines after the value belong to what follows
+            line = entry.end;
+        }
+
+        /**
+         * Start of the next line with content, without moving
+         */
+        private int nextContent() {
+            int saved = line;
+            int next = skipTrivia() ? line : -1;
+            line = saved;
+            return next;
+        }
+
+        /**
+         * Skip blank lines and comments
+         *
+         * @return false at the end of the document
+         */
+        private boolean skipTrivia() {
+            while (line < length) {
+                int lineEnd = lineEnd(line);
+                int p = skipSpaces(line, lineEnd);
+                if (p < lineEnd && text.charAt(p) != '#') {
+                    // Several documents or directives
+                    if (p == line && (text.startsWith("---", p) || text.startsWith("...", p) || text.charAt(p) == '%')) {
+                        unsupported = true;
+                        return false;
+                    }
+                    return true;
+                }
+                line = lineEnd + 1;
+            }
+            return false;
+        }
+
+        private boolean isItem(int p) {
+            return text.charAt(p) == '-' && (p + 1 == length || text.charAt(p + 1) == ' ' || text.charAt(p + 1) == '\n');
+        }
+
+        private int indent(int start) {
+            return skipSpaces(start, lineEnd(start)) - start;
+        }
+
+        private int skipSpaces(int p, int end) {
+            while (p < end && text.charAt(p) == ' ') p++;
+            return p;
+        }
+
+        private int lineEnd(int start) {
+            int end = text.indexOf('\n', start);
+            return end < 0 ? length : end;
+        }
+
+    }
+
+}
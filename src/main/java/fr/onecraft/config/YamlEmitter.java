@@ -0,0 +1,405 @@
+package fr.onecraft.config;
+
+import net.md_5.bungee.config.Configuration;
+import net.md_5.bungee.config.ConfigurationProvider;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * Writer of a tree as YAML, walking the tree instead of building
+ * an intermediate document first
+ * <p>
+ * Output is the same as SnakeYAML with block style. Trees holding values
+ * written differently by some SnakeYAML versions, such as shared sections,
+ * tagged values, double quoted strings, strings going past the line width
+ * (only folded since SnakeYAML 1.18), or sections in lists, are rejected by
+ * {@link #canEmit(Configuration)} and left to SnakeYAML.
+ */
+final class YamlEmitter {
+
+    private static final Resolver RESOLVER = new Resolver();
+
+    // Defaults of SnakeYAML
+    private static final int INDENT = 2;
+    private static final int WIDTH = 80;
+    private static final int MAX_SIMPLE_KEY = 128;
+
+    // Counted by SnakeYAML in the length of simple keys
+    private static final String STRING_TAG = "!!str";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Writer writer;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int length = 0;
+
+    // Whether the current line holds anything
+    private boolean lineOpen = false;
+
+    YamlEmitter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Write a tree, through SnakeYAML if it can't be emitted directly
+     */
+    static void save(ConfigurationProvider provider, Configuration tree, Writer writer) throws IOException {
+        if (canEmit(tree)) {
+            new YamlEmitter(writer).emit(tree);
+        } else {
+            provider.save(tree, writer);
+        }
+    }
+
+    // ----------------------------------------
+    // SCAN
+    // ----------------------------------------
+
+    /**
+     * Whether the tree can be written by this emitter with the same output as SnakeYAML
+     */
+    static boolean canEmit(Configuration tree) {
+        Map<String, Object> values = Sections.values(tree);
+        return values != null && canEmitSection(values, 0, Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    private static boolean canEmitSection(Map<String, Object> values, int indent, Set<Object> seen) {
+        // Shared collections would be written as aliases
+        if (!seen.add(values)) return false;
+
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            String key = entry.getKey();
+            if (key == null || key.isEmpty() || key.length() + STRING_TAG.length() >= MAX_SIMPLE_KEY || !isSingleLine(key)) return false;
+
+            Object value = entry.getValue();
+            if (value instanceof Configuration) {
+                Map<String, Object> section = Sections.values((Configuration) value);
+                if (section == null || !canEmitSection(section, indent + INDENT, seen)) return false;
+            } else if (value instanceof List) {
+                if (!seen.add(value)) return false;
+                for (Object element : (List<?>) value) {
+                    // Sequences in mappings aren't indented
+                    if (!canEmitScalar(element, false) || isFolded(element, indent + 2)) return false;
+                }
+            } else if (!canEmitScalar(value, true) || isFolded(value, indent + width(key) + 2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean canEmitScalar(Object value, boolean literal) {
+        if (value instanceof String) {
+            String text = (String) value;
+            return isSingleLine(text) || (literal && isLiteral(text));
+        }
+        // Not written as floats by SnakeYAML
+        if (value instanceof Float && !Float.isFinite((Float) value)) return false;
+        Tag tag = tag(value);
+        return tag != null && RESOLVER.resolve(NodeId.scalar, represent(value), true).equals(tag);
+    }
+
+    /**
+     * Whether a string is written on a single line, plain or single quoted
+     */
+    private static boolean isSingleLine(String text) {
+        // Numbers with leading zeros are only quoted by recent versions of SnakeYAML
+        if (hasLeadingZero(text)) return false;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!isPrintable(c)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Whether a single line string starting at a column may go past the line width
+     * <p>
+     * Such strings are folded at spaces since SnakeYAML 1.18, and kept on one line before.
+     */
+    private static boolean isFolded(Object value, int column) {
+        if (!(value instanceof String)) return false;
+        String text = (String) value;
+        return text.indexOf('\n') < 0 && text.indexOf(' ') >= 0 && column + width(text) > WIDTH;
+    }
+
+    /**
+     * Width of a single line string once written, at most
+     */
+    private static int width(String text) {
+        // Quotes, and quotes escaped by doubling them
+        int width = text.length() + 2;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\'') width++;
+        }
+        return width;
+    }
+
+    private static boolean hasLeadingZero(String text) {
+        if (text.length() < 2 || text.charAt(0) != '0') return false;
+        for (int i = 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if ((c < '0' || c > '9') && c != '_') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Whether a multi-line string is written as a literal block with clip or strip chomping
+     */
+    private static boolean isLiteral(String text) {
+        if (text.isEmpty() || text.indexOf('\n') < 0) return false;
+
+        // Indentation indicator, keep chomping, or not allowed as a block
+        char first = text.charAt(0);
+        char last = text.charAt(text.length() - 1);
+        if (first == ' ' || first == '\n' || last == ' ') return false;
+        if (last == '\n' && (text.length() == 1 || text.charAt(text.length() - 2) == '\n')) return false;
+        if (text.contains(" \n")) return false;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\n' && !isPrintable(c)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Characters written as is by SnakeYAML, excluding line breaks
+     * <p>
+     * Line and paragraph separators are line breaks for SnakeYAML, the string is then escaped.
+     */
+    private static boolean isPrintable(char c) {
+        return (c >= 0x20 && c <= 0x7E)
+                || (c >= 0xA0 && c <= 0xD7FF && c != 0x2028 && c != 0x2029)
+                || (c >= 0xE000 && c <= 0xFFFD && c != 0xFEFF);
+    }
+
+    private static Tag tag(Object value) {
+        if (value == null) return Tag.NULL;
+        if (value instanceof Boolean) return Tag.BOOL;
+        if (value instanceof Integer || value instanceof Long || value instanceof BigInteger
+                || value instanceof Short || value instanceof Byte) return Tag.INT;
+        if (value instanceof Double || value instanceof Float) return Tag.FLOAT;
+        return null;
+    }
+
+    /**
+     * Text of a value other than a string, as given by SnakeYAML
+     */
+    private static String represent(Object value) {
+        if (value == null) return "null";
+        if (value instanceof Double) {
+            double number = (Double) value;
+            if (Double.isNaN(number)) return ".NaN";
+            if (number == Double.POSITIVE_INFINITY) return ".inf";
+            if (number == Double.NEGATIVE_INFINITY) return "-.inf";
+        }
+        return value.toString();
+    }
+
+    // ----------------------------------------
+    // EMIT
+    // ----------------------------------------
+
+    /**
+     * Write a tree accepted by {@link #canEmit(Configuration)}
+     */
+    void emit(Configuration tree) throws IOException {
+        Map<String, Object> values = Sections.values(tree);
+        if (values.isEmpty()) {
+            write("{}");
+        } else {
+            mapping(values, 0);
+        }
+        if (lineOpen) lineBreak();
+        flush();
+    }
+
+    private void mapping(Map<String, Object> values, int indent) throws IOException {
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            indent(indent);
+            scalar(entry.getKey(), false);
+            write(":");
+
+            Object value = entry.getValue();
+            if (value instanceof Configuration) {
+                Map<String, Object> section = Sections.values((Configuration) value);
+                if (section.isEmpty()) {
+                    write(" {}");
+                } else {
+                    mapping(section, indent + INDENT);
+                }
+            } else if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                if (list.isEmpty()) {
+                    write(" []");
+                } else {
+                    // Sequences in mappings aren't indented
+                    sequence(list, indent);
+                }
+            } else {
+                value(value, indent + INDENT, true);
+            }
+        }
+    }
+
+    private void sequence(List<?> list, int indent) throws IOException {
+        for (Object element : list) {
+            indent(indent);
+            write("-");
+            value(element, indent + INDENT, false);
+        }
+    }
+
+    private void value(Object value, int indent, boolean literal) throws IOException {
+        if (value instanceof String) {
+            String text = (String) value;
+            if (literal && text.indexOf('\n') >= 0) {
+                literal(text, indent);
+            } else {
+                scalar(text, true);
+            }
+        } else {
+            write(" ");
+            write(represent(value));
+        }
+    }
+
+    /**
+     * Write a single line string, plain if it's read back as a string
+     * <p>
+     * Strings are never folded, {@link #canEmit(Configuration)} rejects those going past the line width.
+     *
+     * @param space Whether a space separates the string from the previous indicator
+     */
+    private void scalar(String text, boolean space) throws IOException {
+        boolean plain = !text.isEmpty()
+                && RESOLVER.resolve(NodeId.scalar, text, true).equals(Tag.STR)
+                && isBlockPlain(text);
+
+        if (space) write(" ");
+        if (plain) {
+            plain(text);
+        } else {
+            singleQuoted(text);
+        }
+    }
+
+    private void plain(String text) throws IOException {
+        write(text);
+    }
+
+    private void singleQuoted(String text) throws IOException {
+        write("'");
+        int start = 0;
+        for (int end = 0; end < text.length(); end++) {
+            if (text.charAt(end) == '\'') {
+                write(text, start, end + 1);
+                write("'");
+                start = end + 1;
+            }
+        }
+        write(text, start, text.length());
+        write("'");
+    }
+
+    private void literal(String text, int indent) throws IOException {
+        write(text.charAt(text.length() - 1) == '\n' ? " |" : " |-");
+        lineBreak();
+
+        int start = 0;
+        boolean breaks = true;
+        for (int end = 0; end <= text.length(); end++) {
+            char c = end < text.length() ? text.charAt(end) : 0;
+            if (breaks) {
+                if (c != '\n') {
+                    for (int i = start; i < end; i++) lineBreak();
+                    if (c != 0) indent(indent);
+                    start = end;
+                }
+            } else if (c == 0 || c == '\n') {
+                write(text, start, end);
+                if (c == 0) lineBreak();
+                start = end;
+            }
+            if (c != 0) breaks = c == '\n';
+        }
+    }
+
+    /**
+     * Whether a string may be plain in block context
+     */
+    private static boolean isBlockPlain(String text) {
+        int length = text.length();
+        if (text.charAt(0) == ' ' || text.charAt(length - 1) == ' ') return false;
+        if (text.startsWith("---") || text.startsWith("...")) return false;
+
+        boolean precededBySpace = true;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            boolean followedBySpace = i + 1 >= length || text.charAt(i + 1) == ' ';
+
+            if (i == 0) {
+                if ("#,[]{}&*!|>'\"%@`".indexOf(c) >= 0) return false;
+                if ((c == '?' || c == ':' || c == '-') && followedBySpace) return false;
+            } else {
+                if (c == ':' && followedBySpace) return false;
+                if (c == '#' && precededBySpace) return false;
+            }
+            precededBySpace = c == ' ';
+        }
+        return true;
+    }
+
+    // ----------------------------------------
+    // OUTPUT
+    // ----------------------------------------
+
+    /**
+     * Start a new line, unless the current one is still empty
+     */
+    private void indent(int indent) throws IOException {
+        if (lineOpen) lineBreak();
+        for (int i = 0; i < indent; i++) put(' ');
+        lineOpen = true;
+    }
+
+    private void lineBreak() throws IOException {
+        put('\n');
+        lineOpen = false;
+    }
+
+    private void write(String text) throws IOException {
+        write(text, 0, text.length());
+    }
+
+    private void write(String text, int start, int end) throws IOException {
+        lineOpen = true;
+        while (start < end) {
+            if (length == buffer.length) flush();
+            int count = Math.min(end - start, buffer.length - length);
+            text.getChars(start, start + count, buffer, length);
+            length += count;
+            start += count;
+        }
+    }
+
+    private void put(char c) throws IOException {
+        if (length == buffer.length) flush();
+        buffer[length++] = c;
+    }
+
+    private void flush() throws IOException {
+        writer.write(buffer, 0, length);
+        length = 0;
+    }
+
+}
@@ -0,0 +1,38 @@
+package fr.onecraft.config.exception;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Exception thrown when some configurations of a bulk load can't be loaded
+ */
+public class ConfigurationLoadException extends ConfigurationException {
+
+    private final Map<String, Throwable> failures;
+
+    /**
+     * Constructs an instance of ConfigurationLoadException with the
+     * failure of each configuration.
+     *
+     * @param failures Error of each configuration, by path.
+     */
+    public ConfigurationLoadException(Map<String, Throwable> failures) {
+        super(failures.size() + " configuration(s) can't be loaded: " + failures.keySet());
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+        for (Throwable failure : failures.values()) {
+            addSuppressed(failure);
+        }
+    }
+
+    /**
+     * Get error of each configuration which failed to load, by path
+     * <p>
+     * Usually a {@link ConfigurationException}, but any exception thrown
+     * while loading is reported as well.
+     */
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+}
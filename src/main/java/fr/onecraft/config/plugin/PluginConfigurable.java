@@ -1,14 +1,22 @@
 package fr.onecraft.config.plugin;
 
 import fr.onecraft.config.PluginConfiguration;
+import fr.onecraft.config.exception.ConfigurationException;
+import fr.onecraft.config.exception.ConfigurationLoadException;
 import net.md_5.bungee.api.plugin.Plugin;
 
+import java.util.*;
+import java.util.concurrent.*;
+
 /**
  * Plugin with config.yml
  */
 public abstract class PluginConfigurable extends Plugin {
 
+    private static final String DEFAULT_CONFIG = "config.yml";
+
     private PluginConfiguration config = null;
+    private Map<String, PluginConfiguration> configs = null;
 
     public void saveDefaultConfig() {
         getConfig().saveDefault();
@@ -16,7 +24,7 @@ public abstract class PluginConfigurable extends Plugin {
 
     public PluginConfiguration getConfig() {
         if (config == null) {
-            config = new PluginConfiguration(this, "config.yml");
+            config = new PluginConfiguration(this, DEFAULT_CONFIG);
         }
         return config;
     }
@@ -29,4 +37,107 @@ public abstract class PluginConfigurable extends Plugin {
         getConfig().save();
     }
 
+    // ----------------------------------------
+    // REGISTRY
+    // ----------------------------------------
+
+    /**
+     * Register a configuration, loaded along with the others by {@link #loadConfigs()}
+     *
+     * @param path Path of the file in plugin folder and in plugin resources
+     * @return configuration of the path, the same one if registered twice
+     */
+    public synchronized PluginConfiguration registerConfig(String path) {
+        if (path == null) throw new IllegalArgumentException("path can't be null");
+
+        Map<String, PluginConfiguration> registered = configs();
+        PluginConfiguration configuration = registered.get(path);
+        if (configuration == null) {
+            configuration = DEFAULT_CONFIG.equals(path) ? getConfig() : new PluginConfiguration(this, path);
+            registered.put(path, configuration);
+        }
+        return configuration;
+    }
+
+    /**
+     * Get a registered configuration
+     *
+     * @return configuration, or null if the path isn't registered
+     */
+    public synchronized PluginConfiguration getConfig(String path) {
+        return configs().get(path);
+    }
+
+    /**
+     * Get registered configurations by path, in registration order
+     */
+    public synchronized Map<String, PluginConfiguration> getConfigs() {
+        return new LinkedHashMap<>(configs());
+    }
+
+    /**
+     * Load every registered configuration in parallel, on the common pool
+     *
+     * @see #loadConfigs(Executor)
+     */
+    public void loadConfigs() throws ConfigurationLoadException {
+        loadConfigs(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Load every registered configuration in parallel, waiting for all of them
+     * <p>
+     * A configuration failing to load keeps its previous content,
+     * and doesn't prevent the others from loading: every load is awaited,
+     * then all failures are reported at once, runtime errors included.
+     *
+     * @param executor Executor reading and parsing files, its parallelism bounds the number of files loaded at once
+     * @throws ConfigurationLoadException with the error of each configuration which failed to load
+     */
+    public void loadConfigs(Executor executor) throws ConfigurationLoadException {
+        Map<String, PluginConfiguration> registered = getConfigs();
+
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, PluginConfiguration> entry : registered.entrySet()) {
+            PluginConfiguration configuration = entry.getValue();
+            CompletableFuture<Void> future;
+            try {
+                future = CompletableFuture.runAsync(() -> {
+                    try {
+                        configuration.reloadOrThrow();
+                    } catch (ConfigurationException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
+            } catch (RejectedExecutionException e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            futures.put(entry.getKey(), future);
+        }
+
+        // Every load is awaited before reporting, whatever the failure
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<Void>> entry : futures.entrySet()) {
+            try {
+                entry.getValue().join();
+            } catch (CompletionException e) {
+                failures.put(entry.getKey(), e.getCause() != null ? e.getCause() : e);
+            } catch (CancellationException e) {
+                failures.put(entry.getKey(), e);
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            throw new ConfigurationLoadException(failures);
+        }
+    }
+
+    private Map<String, PluginConfiguration> configs() {
+        if (configs == null) {
+            configs = new LinkedHashMap<>();
+        }
+        return configs;
+    }
+
 }
@@ -1,17 +1,49 @@
 package fr.onecraft.config.test;
 
+import fr.onecraft.config.AccessProfiler;
+import fr.onecraft.config.ConfigKey;
+import fr.onecraft.config.ConfigValue;
+import fr.onecraft.config.ConfigurationStats;
 import fr.onecraft.config.FileConfiguration;
+import fr.onecraft.config.FrozenConfiguration;
+import fr.onecraft.config.SharedConfigurations;
+import fr.onecraft.config.SimpleYamlParser;
+import fr.onecraft.config.exception.ConfigurationException;
 import fr.onecraft.config.exception.InvalidConfigurationException;
 import fr.onecraft.config.util.Config;
+import fr.onecraft.config.util.Files;
+import net.md_5.bungee.config.Configuration;
+import net.md_5.bungee.config.ConfigurationProvider;
+import net.md_5.bungee.config.YamlConfiguration;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.fail;
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
 
 public class FileConfigurationTest {
 
     private static final boolean DEBUG = false;
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void test() throws Exception {
 
@@ -41,6 +73,683 @@ public class FileConfigurationTest {
 
     }
 
+    @Test
+    public void lazy() throws Exception {
+
+        FileConfiguration defaults = new FileConfiguration();
+        FileConfiguration config = new FileConfiguration();
+        config.options().lazy(true);
+
+        defaults.load(Config.PLUGIN_RESOURCE.getStream());
+        config.load(Config.USER_EDITED.getFile(), defaults);
+
+        // Only the section read is parsed
+        assertEquals("it's", config.getString("changes.quotes"));
+        assertFalse(config.getConfig("changes.quotes").getKeys().contains("test-lists"));
+
+        config.options().copyDefaults(false);
+        config.options().copyHeader(false);
+        assertEquals(Config.EXPECTED_WITHOUT_DEFAULT.getString(), config.saveToString());
+
+        config.options().copyDefaults(true);
+        config.options().copyHeader(true);
+        assertEquals(Config.EXPECTED_WITH_DEFAULT.getString(), config.saveToString());
+
+        // Errors in sections not read yet fail the load, previous tree is kept
+        try {
+            config.loadFromString("first: 1\nsecond:\n  list: [1, 2\n");
+            fail();
+        } catch (InvalidConfigurationException ignored) {}
+        assertEquals("it's", config.getString("changes.quotes"));
+    }
+
+    @Test
+    public void binaryCache() throws Exception {
+
+        FileConfiguration defaults = new FileConfiguration();
+        defaults.load(Config.PLUGIN_RESOURCE.getStream());
+
+        File file = folder.newFile("config.yml");
+        Files.copy(Config.USER_EDITED.getFile(), file);
+
+        // First load writes the cache, second one reads it
+        for (int i = 0; i < 2; i++) {
+            FileConfiguration config = new FileConfiguration();
+            config.options().binaryCache(true);
+            config.load(file, defaults);
+            assertTrue(new File(folder.getRoot(), "config.yml.cache").exists());
+
+            config.options().copyDefaults(true);
+            assertEquals(Config.EXPECTED_WITH_DEFAULT.getString(), config.saveToString());
+        }
+
+        // Cache is ignored once the file changes
+        java.nio.file.Files.write(file.toPath(), "changes:\n  quotes: updated\n".getBytes("UTF-8"));
+        FileConfiguration config = new FileConfiguration();
+        config.options().binaryCache(true);
+        config.load(file);
+        assertEquals("updated", config.getString("changes.quotes"));
+
+        // Corrupted cache is ignored, even with sizes too large to allocate
+        write(file, "list:\n- a\n");
+        config = new FileConfiguration();
+        config.options().binaryCache(true);
+        config.load(file);
+
+        File cache = new File(folder.getRoot(), "config.yml.cache");
+        byte[] bytes = java.nio.file.Files.readAllBytes(cache.toPath());
+        int size = new String(bytes, StandardCharsets.ISO_8859_1).indexOf("list") + "list".length() + 1;
+        ByteBuffer.wrap(bytes).putInt(size, Integer.MAX_VALUE);
+        java.nio.file.Files.write(cache.toPath(), bytes);
+
+        config = new FileConfiguration();
+        config.options().binaryCache(true);
+        config.load(file);
+        assertEquals(Collections.singletonList("a"), config.getStringList("list"));
+    }
+
+    @Test
+    public void parser() throws Exception {
+
+        SimpleYamlParser parser = new SimpleYamlParser();
+        ConfigurationProvider yaml = ConfigurationProvider.getProvider(YamlConfiguration.class);
+
+        // Same trees as SnakeYAML
+        for (Config resource : Config.values()) {
+            if (resource == Config.INVALID) continue;
+            Configuration expected = yaml.load(resource.getString());
+            Configuration actual = parser.parse(CharBuffer.wrap(resource.getString()), null);
+            assertNotNull(resource.name(), actual);
+            assertSameTree(expected, actual);
+        }
+
+        // Unsupported documents are left to SnakeYAML
+        assertNull(parser.parse(CharBuffer.wrap("a: &anchor 1\nb: *anchor\n"), null));
+        assertNull(parser.parse(CharBuffer.wrap("date: 2001-12-14\n"), null));
+        assertNull(parser.parse(CharBuffer.wrap("list:\n- key: value\n"), null));
+        assertNull(parser.parse(CharBuffer.wrap("a: b\u2028c\n"), null));
+
+        // Keys too long for SnakeYAML, quoted or not
+        String longKey = String.join("", Collections.nCopies(1100, "k"));
+        assertNull(parser.parse(CharBuffer.wrap(longKey + ": 1\n"), null));
+        assertNull(parser.parse(CharBuffer.wrap("'" + longKey + "': 1\n"), null));
+        assertNull(parser.parse(CharBuffer.wrap("\"" + longKey + "\": 1\n"), null));
+        assertEquals(1, parser.parse(CharBuffer.wrap("'key': 1\n"), null).getInt("key"));
+
+        FileConfiguration defaults = new FileConfiguration();
+        FileConfiguration config = new FileConfiguration();
+        config.setParser(parser);
+
+        defaults.load(Config.PLUGIN_RESOURCE.getStream());
+        config.load(Config.USER_EDITED.getFile(), defaults);
+        config.options().copyDefaults(true);
+        assertEquals(Config.EXPECTED_WITH_DEFAULT.getString(), config.saveToString());
+
+        try {
+            FileConfiguration invalid = new FileConfiguration();
+            invalid.setParser(parser);
+            invalid.load(Config.INVALID.getFile());
+            fail();
+        } catch (InvalidConfigurationException ignored) {}
+    }
+
+    @Test
+    public void stats() throws Exception {
+
+        File file = folder.newFile("config.yml");
+        Files.copy(Config.USER_EDITED.getFile(), file);
+
+        FileConfiguration config = new FileConfiguration();
+        ConfigurationStats stats = new ConfigurationStats(config);
+        config.setMetrics(stats);
+
+        config.load(file);
+        config.set("changes.quotes", "updated");
+        config.save(file);
+
+        try {
+            config.load(new File(folder.getRoot(), "missing.yml"));
+            fail();
+        } catch (ConfigurationException ignored) {}
+
+        assertEquals(1, stats.getLoads());
+        assertEquals(1, stats.getLoadFailures());
+        assertEquals(1, stats.getSaves());
+        assertEquals(file.length(), stats.getBytesWritten());
+        assertEquals(2, stats.getTimings().get("LOAD").getCount());
+        assertEquals(1, stats.getTimings().get("SERIALIZE").getCount());
+        assertEquals(14, stats.getKeyCount());
+    }
+
+    @Test
+    public void profiler() throws Exception {
+
+        FileConfiguration config = new FileConfiguration();
+        config.load(Config.USER_EDITED.getFile());
+
+        AccessProfiler profiler = new AccessProfiler();
+        config.setProfiler(profiler);
+
+        for (int i = 0; i < 3; i++) {
+            config.getString("missing.path", "default");
+        }
+        config.getString("changes.quotes");
+        config.getString("wrong-place.first");
+
+        List<AccessProfiler.PathStats> top = profiler.top(2);
+        assertEquals(2, top.size());
+        assertEquals("missing.path", top.get(0).getPath());
+        assertEquals(3, top.get(0).getReads());
+        assertEquals(1.0, top.get(0).getFallbackRate(), 0);
+        assertEquals(Thread.currentThread().getName(), top.get(0).getThreads().get(0));
+
+        // Numbers are not strings
+        for (AccessProfiler.PathStats stats : profiler.top(3)) {
+            assertEquals(stats.getPath().equals("changes.quotes") ? 0 : stats.getReads(), stats.getFallbacks());
+        }
+        println(profiler.report(10));
+    }
+
+    @Test
+    public void listeners() throws Exception {
+
+        FileConfiguration config = new FileConfiguration();
+        config.loadFromString("servers:\n  lobby: 1\n  game: 2\nmotd: hello\n");
+
+        List<String> changes = new ArrayList<>();
+        config.addListener("servers", (path, oldValue, newValue) -> changes.add(path));
+        config.addListener("motd", (path, oldValue, newValue) -> changes.add(path + "=" + oldValue + ">" + newValue));
+        config.addListener("missing", (path, oldValue, newValue) -> changes.add(path));
+
+        // Order of keys is not a change
+        config.loadFromString("servers:\n  game: 2\n  lobby: 1\nmotd: hello\n");
+        assertTrue(changes.isEmpty());
+
+        config.loadFromString("servers:\n  game: 2\n  lobby: 1\nmotd: welcome\n");
+        assertEquals(Collections.singletonList("motd=hello>welcome"), changes);
+
+        changes.clear();
+        config.loadFromString("servers:\n  game: 3\n  lobby: 1\nmotd: welcome\n");
+        assertEquals(Collections.singletonList("servers"), changes);
+        assertFalse(config.getKeys().contains("missing"));
+    }
+
+    @Test
+    public void keys() throws Exception {
+
+        FileConfiguration defaults = new FileConfiguration();
+        FileConfiguration config = new FileConfiguration();
+
+        defaults.load(Config.PLUGIN_RESOURCE.getStream());
+        config.load(Config.USER_EDITED.getFile(), defaults);
+
+        ConfigKey<String> quotes = config.key("changes.quotes", "none");
+        ConfigKey<Integer> second = config.key("wrong-place.second", int.class);
+        ConfigKey<Integer> missing = config.key("missing.path", 42);
+        ConfigKey<String> fromDefaults = config.key("wrong-type.level.b", String.class);
+
+        assertEquals("it's", quotes.get());
+        assertEquals(Integer.valueOf(2), second.get());
+        assertEquals(Integer.valueOf(42), missing.get());
+        assertEquals("ok", fromDefaults.get());
+
+        // Invalidated on set
+        config.set("changes.quotes", "updated");
+        assertEquals("updated", quotes.get());
+
+        // Invalidated on load
+        config.loadFromString("wrong-place:\n  second: 3\n", defaults);
+        assertEquals(Integer.valueOf(3), second.get());
+        assertEquals("none", quotes.get());
+    }
+
+    @Test
+    public void snapshot() throws Exception {
+
+        FileConfiguration config = new FileConfiguration();
+        config.load(Config.USER_EDITED.getFile());
+        config.options().snapshot(true);
+
+        Configuration before = config.getConfig();
+
+        config.update(tree -> {
+            tree.set("wrong-place.first", 10);
+            tree.set("wrong-place.second", 20);
+        });
+
+        Configuration after = config.getConfig();
+
+        // Old tree is left untouched
+        assertNotSame(before, after);
+        assertEquals(1, before.getInt("wrong-place.first"));
+        assertEquals(2, before.getInt("wrong-place.second"));
+
+        assertEquals(10, after.getInt("wrong-place.first"));
+        assertEquals(20, after.getInt("wrong-place.second"));
+        assertEquals("it's", after.getString("changes.quotes"));
+
+        // Only the changed path is copied, keys containing dots are kept as is
+        config.loadFromString("dotted:\n  'a.b': 1\nother:\n  value: 2\n");
+        before = config.getConfig();
+        config.set("dotted.c", 3);
+        after = config.getConfig();
+        assertEquals(Arrays.asList("a.b", "c"), new ArrayList<>(after.getSection("dotted").getKeys()));
+        assertSame(before.get("other"), after.get("other"));
+
+        // Missing keys can be read while the snapshot is replaced, nothing is added to the tree
+        ConfigKey<Integer> key = config.key("missing.value", 0);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread reader = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 5000; i++) {
+                        assertEquals(0, config.getInt("missing" + (i % 50) + ".value"));
+                        assertEquals(0, (int) key.get());
+                    }
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                }
+            });
+            reader.start();
+            threads.add(reader);
+        }
+        for (int i = 0; i < 5000; i++) {
+            config.set("other.value", i);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(error.get());
+        assertEquals(Arrays.asList("dotted", "other"), new ArrayList<>(config.getConfig().getKeys()));
+    }
+
+    @Test
+    public void dirty() throws Exception {
+
+        File file = new File(folder.getRoot(), "config.yml");
+        Files.copy(Config.USER_EDITED.getFile(), file);
+
+        FileConfiguration config = new FileConfiguration();
+        config.load(file);
+        assertFalse(config.isDirty());
+
+        config.set("wrong-place.first", 10);
+        assertTrue(config.isDirty());
+
+        config.save(file);
+        assertFalse(config.isDirty());
+
+        // Only the config file is left, no temporary file
+        assertEquals(1, folder.getRoot().list().length);
+
+        FileConfiguration reloaded = new FileConfiguration();
+        reloaded.load(file);
+        assertEquals(10, reloaded.getInt("wrong-place.first"));
+
+        // Reading sections doesn't change anything, compiled keys are served from cache
+        ConfigKey<Integer> key = config.key("wrong-place.first", 0);
+        assertEquals(10, (int) key.get());
+        Configuration section = config.getSection("wrong-place");
+        config.getConfig().getList("test-lists.numbers");
+        section.set("first", 20);
+        assertFalse(config.isDirty());
+        assertEquals(10, (int) key.get());
+
+        // Until direct edits are flagged
+        config.markDirty();
+        assertTrue(config.isDirty());
+        assertEquals(20, (int) key.get());
+
+        config.save(file);
+        assertFalse(config.isDirty());
+        reloaded.load(file);
+        assertEquals(20, reloaded.getInt("wrong-place.first"));
+
+        config.load(file);
+        assertFalse(config.isDirty());
+
+        // Values set while saving are either in the file or keep the tree dirty
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread saver = new Thread(() -> {
+            try {
+                for (int i = 0; i < 200; i++) {
+                    config.save(file);
+                }
+            } catch (Throwable e) {
+                error.compareAndSet(null, e);
+            }
+        });
+        saver.start();
+        for (int i = 0; saver.isAlive(); i++) {
+            // Keys are added and removed, changing the structure of the section
+            config.set("added.key" + i % 100, i % 200 < 100 ? i : null);
+        }
+        assertNull(error.get());
+
+        config.save(file);
+        reloaded.load(file);
+        assertEquals(config.getSection("added").getKeys(), reloaded.getSection("added").getKeys());
+    }
+
+    @Test
+    public void emitter() throws Exception {
+
+        FileConfiguration config = new FileConfiguration();
+        config.set("strings.plain", "hello world");
+        config.set("strings.quoted", "it's: quoted # text");
+        config.set("strings.types", Arrays.asList("yes", "1.5", "", "- item", "null"));
+        config.set("strings.long", String.join(" ", Collections.nCopies(40, "word")));
+        config.set("strings.multiline", "first\n\n  second\n");
+        config.set("numbers", Arrays.asList(1, 10000000000L, 0.5, Double.NaN));
+        config.set("empty.section", Collections.emptyMap());
+        config.set("empty.list", Collections.emptyList());
+        config.set("'quoted key'", true);
+
+        // Same output as SnakeYAML
+        ConfigurationProvider yaml = ConfigurationProvider.getProvider(YamlConfiguration.class);
+        StringWriter expected = new StringWriter();
+        yaml.save(config.getConfig(), expected);
+        assertEquals(expected.toString(), config.saveToString());
+
+        // Values written differently across SnakeYAML versions are left to it
+        config.set("strings.nested.deeper.long", "value of a nested key reaching the end of the line, eighty");
+        config.set("floats", Arrays.asList(1.5f, Float.NaN, Float.POSITIVE_INFINITY));
+        expected = new StringWriter();
+        yaml.save(config.getConfig(), expected);
+        assertEquals(expected.toString(), config.saveToString());
+
+        // Line and paragraph separators are line breaks, written by SnakeYAML
+        config.set("strings.separators", "line\u2028paragraph\u2029end");
+        expected = new StringWriter();
+        yaml.save(config.getConfig(), expected);
+        assertEquals(expected.toString(), config.saveToString());
+
+        FileConfiguration reloaded = new FileConfiguration();
+        reloaded.loadFromString(config.saveToString());
+        assertEquals("line\u2028paragraph\u2029end", reloaded.getString("strings.separators"));
+
+        // Shared sections are written by SnakeYAML as aliases
+        config.set("shared", config.getConfig().getList("numbers"));
+        expected = new StringWriter();
+        yaml.save(config.getConfig(), expected);
+        assertEquals(expected.toString(), config.saveToString());
+    }
+
+    @Test
+    public void preserveComments() throws Exception {
+
+        File file = folder.newFile("config.yml");
+        write(file, "# header\n\n# first\nfirst: 1 # inline\nsection:\n  # nested\n  a: old\n  b: [1, 2]\nlast: true\n");
+
+        FileConfiguration config = new FileConfiguration();
+        config.options().preserveComments(true);
+        config.load(file);
+
+        config.set("first", 2);
+        config.set("section.b", null);
+        config.set("section.c", "new");
+        config.save(file);
+        assertEquals("# header\n\n# first\nfirst: 2 # inline\nsection:\n  # nested\n  a: old\n  c: new\nlast: true\n", read(file));
+
+        // Document is indexed again after saving
+        config.set("last", Arrays.asList("x", "y"));
+        config.save(file);
+        assertEquals("# header\n\n# first\nfirst: 2 # inline\nsection:\n  # nested\n  a: old\n  c: new\nlast:\n- x\n- y\n", read(file));
+
+        // Merged defaults are inserted in the user file
+        FileConfiguration defaults = new FileConfiguration();
+        defaults.load(Config.PLUGIN_RESOURCE.getStream());
+
+        Files.copy(Config.USER_EDITED.getFile(), file);
+        config = new FileConfiguration();
+        config.options().preserveComments(true);
+        config.options().copyDefaults(true);
+        config.load(file, defaults);
+        config.save(file);
+        assertTrue(read(file).startsWith("# WRONG HEADER\n"));
+        assertTrue(read(file).contains("  quotes: \"it's\"\n"));
+
+        FileConfiguration reloaded = new FileConfiguration();
+        reloaded.load(file, defaults);
+        reloaded.options().copyDefaults(true);
+        assertEquals(Config.EXPECTED_WITH_DEFAULT.getString(), reloaded.saveToString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void freeze() throws Exception {
+
+        FileConfiguration defaults = new FileConfiguration();
+        FileConfiguration config = new FileConfiguration();
+        defaults.load(Config.PLUGIN_RESOURCE.getStream());
+        config.load(Config.USER_EDITED.getFile(), defaults);
+
+        FrozenConfiguration frozen = config.freeze();
+        assertEquals(new ArrayList<>(config.getKeys()), new ArrayList<>(frozen.getKeys()));
+
+        List<String> paths = Arrays.asList("test-lists.strings", "test-lists.numbers", "changes.quotes",
+                "changes.array", "changes.multiline", "wrong-type.level.c", "wrong-type.level.b",
+                "wrong-type.level.user-added-path", "wrong-place.first", "special-keys.false",
+                "special-keys.3", "special-keys.null", "missing", "missing.path");
+        for (String path : paths) {
+            assertEquals(path, config.contains(path), frozen.contains(path));
+            assertEquals(path, config.getInt(path), frozen.getInt(path));
+            assertEquals(path, config.getDouble(path), frozen.getDouble(path), 0);
+            assertEquals(path, config.getBoolean(path), frozen.getBoolean(path));
+            assertEquals(path, config.getString(path), frozen.getString(path));
+            assertEquals(path, config.getString(path, "def"), frozen.getString(path, "def"));
+            assertEquals(path, config.getList(path), frozen.getList(path));
+            assertEquals(path, config.getIntList(path), frozen.getIntList(path));
+            assertEquals(path, config.getStringList(path), frozen.getStringList(path));
+        }
+
+        // Sections share the index, and keep their defaults
+        FrozenConfiguration section = frozen.getSection("wrong-type");
+        assertEquals(Arrays.asList("level"), new ArrayList<>(section.getKeys()));
+        assertEquals("100.001", section.getString("level.c"));
+        assertEquals("ok", section.getString("level.b"));
+        assertEquals("ok", ((FrozenConfiguration) frozen.get("wrong-type.level")).getString("b"));
+        assertTrue(frozen.getSection("missing").getKeys().isEmpty());
+
+        // Changes aren't visible, and lists can't be modified
+        config.set("changes.quotes", "changed");
+        assertEquals("it's", frozen.getString("changes.quotes"));
+        try {
+            frozen.getStringList("test-lists.strings").add("value");
+            ((List<Object>) frozen.getList("test-lists.strings")).add("value");
+            fail();
+        } catch (UnsupportedOperationException ignored) {}
+    }
+
+    @Test
+    public void shared() throws Exception {
+
+        SharedConfigurations shared = SharedConfigurations.get();
+        int size = shared.size();
+
+        File file = folder.newFile("shared.yml");
+        write(file, "messages:\n  welcome: Hello\n");
+
+        // Same file through another path gives the same snapshot
+        FrozenConfiguration first = shared.acquire(file);
+        FrozenConfiguration second = shared.acquire(new File(file.getParentFile(), "./shared.yml"));
+        assertSame(first, second);
+        assertEquals("Hello", first.getString("messages.welcome"));
+        assertEquals(size + 1, shared.size());
+
+        // Changed content is parsed again, previous snapshot is kept by its holders
+        write(file, "messages:\n  welcome: Hi\n");
+        FrozenConfiguration changed = shared.acquire(file);
+        assertNotSame(first, changed);
+        assertEquals("Hi", changed.getString("messages.welcome"));
+        assertEquals("Hello", first.getString("messages.welcome"));
+        assertEquals(size + 2, shared.size());
+
+        shared.release(first);
+        assertEquals(size + 2, shared.size());
+        shared.release(second);
+        assertEquals(size + 1, shared.size());
+        assertSame(changed, shared.acquire(file));
+        shared.release(changed);
+        shared.release(changed);
+        assertEquals(size, shared.size());
+
+        try {
+            shared.release(changed);
+            fail();
+        } catch (IllegalArgumentException ignored) {}
+
+        write(file, "messages: [\n");
+        try {
+            shared.acquire(file);
+            fail();
+        } catch (InvalidConfigurationException ignored) {}
+        assertEquals(size, shared.size());
+
+        // An error while parsing doesn't leave other acquires of the same content waiting
+        ExecutorService executor = Executors.newFixedThreadPool(4, runnable -> {
+            Thread waiting = new Thread(runnable, "shared");
+            waiting.setDaemon(true);
+            return waiting;
+        });
+        try {
+            List<Future<FrozenConfiguration>> failed = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                failed.add(executor.submit(() -> shared.acquire(file)));
+            }
+            for (Future<FrozenConfiguration> future : failed) {
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                    fail();
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof InvalidConfigurationException);
+                }
+            }
+
+            write(file, "messages:\n  welcome: Hey\n");
+            FrozenConfiguration fixed = executor.submit(() -> shared.acquire(file)).get(10, TimeUnit.SECONDS);
+            assertEquals("Hey", fixed.getString("messages.welcome"));
+            shared.release(fixed);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(size, shared.size());
+    }
+
+    @Test
+    public void arrays() throws Exception {
+
+        FileConfiguration config = new FileConfiguration();
+        config.load(Config.PLUGIN_RESOURCE.getStream());
+
+        int[] numbers = config.getIntArray("test-lists.numbers");
+        assertArrayEquals(new int[]{2, 42}, numbers);
+        assertArrayEquals(new double[]{2.1, 42}, config.getDoubleArray("test-lists.numbers"), 0);
+        assertArrayEquals(new boolean[]{false, true}, config.getBooleanArray("test-lists.booleans"));
+
+        // Same array until the tree changes
+        assertSame(numbers, config.getIntArray("test-lists.numbers"));
+
+        config.set("test-lists.numbers", Arrays.asList(1, 2, 3));
+        assertArrayEquals(new long[]{1, 2, 3}, config.getLongArray("test-lists.numbers"));
+    }
+
+    @Test
+    public void bind() throws Exception {
+
+        FileConfiguration defaults = new FileConfiguration();
+        FileConfiguration config = new FileConfiguration();
+
+        defaults.load(Config.PLUGIN_RESOURCE.getStream());
+        config.load(Config.USER_EDITED.getFile(), defaults);
+
+        Bound bound = config.bind(Bound.class);
+        assertEquals("it's", bound.quotes);
+        assertEquals(2, bound.second);
+        assertEquals("ok", bound.fromDefaults);
+        assertEquals("unset", bound.missing);
+
+        // Bound again on load
+        config.loadFromString("wrong-place:\n  second: 3\n", defaults);
+        assertEquals(3, bound.second);
+        assertEquals("unset", bound.missing);
+
+        // Wrong type keeps previous configuration
+        try {
+            config.loadFromString("wrong-place:\n  second: text\n", defaults);
+            fail();
+        } catch (InvalidConfigurationException ignored) {}
+        assertEquals(3, bound.second);
+        assertEquals(3, config.getInt("wrong-place.second"));
+
+        // Bindings added and removed while loading only get values of their own class
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread loader = new Thread(() -> {
+            try {
+                for (int i = 0; i < 200; i++) {
+                    config.loadFromString("wrong-place:\n  second: " + i + "\n", defaults);
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        loader.start();
+        while (loader.isAlive()) {
+            config.unbind(config.bind(Quotes.class));
+        }
+        loader.join();
+        assertNull(failure.get());
+        assertEquals(199, bound.second);
+    }
+
+    public static class Quotes {
+
+        @ConfigValue("changes.quotes")
+        private String quotes;
+
+    }
+
+    public static class Bound {
+
+        @ConfigValue("changes.quotes")
+        private String quotes;
+
+        @ConfigValue("wrong-place.second")
+        private int second;
+
+        @ConfigValue("wrong-type.level.b")
+        private String fromDefaults;
+
+        @ConfigValue("missing.path")
+        private String missing = "unset";
+
+    }
+
+    private static void write(File file, String contents) throws Exception {
+        java.nio.file.Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws Exception {
+        return new String(java.nio.file.Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void assertSameTree(Configuration expected, Configuration actual) {
+        assertEquals(new ArrayList<>(expected.getKeys()), new ArrayList<>(actual.getKeys()));
+        for (String key : expected.getKeys()) {
+            Object value = expected.get(key);
+            Object other = actual.get(key);
+            if (value instanceof Configuration) {
+                assertTrue(key, other instanceof Configuration);
+                assertSameTree((Configuration) value, (Configuration) other);
+            } else {
+                assertEquals(key, value, other);
+                if (value != null) assertEquals(key, value.getClass(), other.getClass());
+            }
+        }
+    }
+
     private void println(String line) {
         if (DEBUG) System.out.println(line);
     }
@@ -1,7 +1,10 @@
 package fr.onecraft.config.test;
 
 import fr.onecraft.config.FileConfiguration;
+import fr.onecraft.config.PluginConfiguration;
 import fr.onecraft.config.exception.ConfigurationException;
+import fr.onecraft.config.exception.ConfigurationLoadException;
+import fr.onecraft.config.exception.InvalidConfigurationException;
 import fr.onecraft.config.plugin.PluginConfigurable;
 import fr.onecraft.config.util.Config;
 import fr.onecraft.config.util.Files;
@@ -16,12 +19,21 @@ import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.File;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.powermock.api.mockito.PowerMockito.*;
 
@@ -44,6 +56,9 @@ public class PluginConfigurationTest {
         when(plugin.getResourceAsStream(anyString())).thenAnswer(new Answer<InputStream>() {
             @Override
             public InputStream answer(InvocationOnMock invocation) throws Throwable {
+                if ("broken.yml".equals(invocation.getArguments()[0])) {
+                    throw new IllegalStateException("broken resource");
+                }
                 return Config.PLUGIN_RESOURCE.getStream();
             }
         });
@@ -52,6 +67,10 @@ public class PluginConfigurationTest {
         doCallRealMethod().when(plugin).saveDefaultConfig();
         doCallRealMethod().when(plugin).reloadConfig();
         doCallRealMethod().when(plugin).saveConfig();
+        doCallRealMethod().when(plugin).registerConfig(anyString());
+        doCallRealMethod().when(plugin).getConfigs();
+        doCallRealMethod().when(plugin).loadConfigs();
+        doCallRealMethod().when(plugin).loadConfigs(any(Executor.class));
 
         return plugin;
     }
@@ -134,6 +153,14 @@ public class PluginConfigurationTest {
         // Test after saving
         assertEquals(true, plugin.getConfig().get("wrong-type.level.c"));
         assertEquals(Files.read(Config.EXPECTED_WITH_DEFAULT.getFile()), Files.read(configFile));
+
+        // Sections created in the defaults by reading the tree don't outlive a reload
+        plugin.getConfig().getConfig().getInt("missing.value");
+        plugin.reloadConfig();
+        plugin.getConfig().options().copyDefaults(true);
+        plugin.getConfig().set("wrong-place", null);
+        plugin.saveConfig();
+        assertEquals(Files.read(Config.EXPECTED_WITH_DEFAULT.getFile()), Files.read(configFile));
     }
 
     @Test
@@ -165,5 +192,134 @@ public class PluginConfigurationTest {
 
     }
 
+    @Test
+    public void loadConfigs() {
+        // Prepare
+        Files.copy(Config.USER_EDITED.getFile(), getConfigFile());
+        Files.copy(Config.USER_EDITED.getFile(), new File(folder.getRoot(), "other.yml"));
+        Files.copy(Config.INVALID.getFile(), new File(folder.getRoot(), "invalid.yml"));
+        PluginConfigurable plugin = getPlugin();
+        plugin.registerConfig("config.yml");
+        plugin.registerConfig("invalid.yml");
+        plugin.registerConfig("broken.yml");
+        plugin.registerConfig("other.yml");
+
+        // Every failure is reported at once
+        try {
+            plugin.loadConfigs();
+            fail("Failures should be reported");
+        } catch (ConfigurationLoadException e) {
+            assertEquals(Arrays.asList("invalid.yml", "broken.yml"), new ArrayList<>(e.getFailures().keySet()));
+            assertTrue(e.getFailures().get("invalid.yml") instanceof InvalidConfigurationException);
+            assertTrue(e.getFailures().get("broken.yml") instanceof IllegalStateException);
+            assertEquals(2, e.getSuppressed().length);
+        }
+
+        // Others are loaded anyway
+        assertEquals("ok", plugin.getConfig().get("wrong-type.level.b"));
+        assertEquals("ok", plugin.getConfigs().get("other.yml").get("wrong-type.level.b"));
+    }
+
+    @Test
+    public void saveAsync() throws Exception {
+        // Prepare
+        File configFile = getConfigFile();
+        Files.put("value: 0\n", configFile);
+        PluginConfiguration config = new PluginConfiguration(getPlugin(), "config.yml");
+        config.options().copyDefaults(false);
+
+        // Changes made while a save is pending are written by flush
+        config.setSaveDelay(1, TimeUnit.HOURS);
+        CompletableFuture<Boolean> pending = config.saveAsync();
+        config.set("value", 1);
+        assertTrue(config.flush());
+        assertTrue(pending.join());
+        assertEquals(1, savedValue(configFile));
+
+        // Even when the background save already started
+        config.setSaveDelay(0, TimeUnit.MILLISECONDS);
+        for (int i = 2; i < 200; i++) {
+            config.saveAsync();
+            config.set("value", i);
+            assertTrue(config.flush());
+            assertEquals(i, savedValue(configFile));
+        }
+    }
+
+    @Test
+    public void autoReload() throws Exception {
+        // Prepare
+        File dataFolder = folder.newFolder("watched");
+        File configFile = new File(dataFolder, "config.yml");
+        Files.put("value: 0\n", configFile);
+        PluginConfigurable plugin = getPlugin();
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+
+        PluginConfiguration config = new PluginConfiguration(plugin, "config.yml");
+        config.options().copyDefaults(false);
+        assertEquals(0, config.getInt("value"));
+
+        List<Object> changes = new CopyOnWriteArrayList<>();
+        config.addListener("value", (path, oldValue, newValue) -> changes.add(newValue));
+        assertTrue(config.setAutoReload(true));
+        try {
+            // Burst of writes is reloaded once
+            for (int i = 1; i <= 5; i++) {
+                Files.put("value: " + i + "\n", configFile);
+                Thread.sleep(20);
+            }
+            awaitValue(config, 5);
+            Thread.sleep(1000);
+            assertEquals(Collections.singletonList(5), changes);
+
+            // Own saves are not reloaded
+            config.set("value", 6);
+            assertTrue(config.save());
+            config.set("value", 7);
+            Thread.sleep(1000);
+            assertEquals(7, config.getInt("value"));
+
+            // Edits keeping size and modification time are reloaded
+            assertTrue(config.save());
+            long modified = configFile.lastModified();
+            Files.put(Files.read(configFile).replace("value: 7", "value: 8"), configFile);
+            assertTrue(configFile.setLastModified(modified));
+            awaitValue(config, 8);
+
+            // Deleted directory is watched again once recreated
+            assertTrue(configFile.delete());
+            assertTrue(dataFolder.delete());
+            Thread.sleep(1000);
+            assertTrue(dataFolder.mkdir());
+            Files.put("value: 9\n", configFile);
+            awaitValue(config, 9);
+        } finally {
+            config.setAutoReload(false);
+        }
+
+        // Watcher thread stops with the last watched file
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("BungeeYAML Watcher")) {
+                thread.join(10000);
+                assertFalse(thread.isAlive());
+            }
+        }
+    }
+
+    private static int savedValue(File file) throws ConfigurationException {
+        FileConfiguration saved = new FileConfiguration();
+        saved.load(file);
+        return saved.getInt("value");
+    }
+
+    private static void awaitValue(PluginConfiguration config, int value) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30000;
+        while (config.getInt("value") != value) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Value " + value + " not reloaded");
+            }
+            Thread.sleep(50);
+        }
+    }
 
 }